@@ -0,0 +1,247 @@
+package io.branch.branchandroiddemo.test;
+
+import android.content.Context;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+
+import io.branch.branchandroiddemo.R;
+import io.branch.referral.network.BranchRemoteInterface;
+
+/**
+ * Benchmarks connection reuse of the default Branch remote interface against a local HTTPS stand-in for the Branch
+ * API. The stand-in counts the connections it accepts and the TLS handshakes completed on them, so the counts are
+ * the TCP and TLS handshakes paid for the requests made. The stand-in serves a self-signed certificate for
+ * 127.0.0.1 from res/raw/benchmark_keystore.p12, which the client trusts only while a test runs.
+ */
+public class ConnectionReuseBenchmark extends InstrumentationTestCase {
+    private static final int REQUEST_COUNT = 50;
+    private static final String RESPONSE_BODY = "{\"session_id\":\"1234\"}";
+    private static final String KEYSTORE_ALIAS = "benchmark";
+    private static final char[] KEYSTORE_PASSWORD = "benchmark".toCharArray();
+
+    private StandInServer server;
+    private BranchRemoteInterface remoteInterface;
+    private SSLSocketFactory defaultSocketFactory;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        Context context = getInstrumentation().getContext();
+        KeyStore keyStore = loadKeyStore(context);
+        server = new StandInServer(keyStore);
+        server.start();
+        defaultSocketFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+        HttpsURLConnection.setDefaultSSLSocketFactory(createClientSocketFactory(keyStore));
+        remoteInterface = BranchRemoteInterface.getDefaultBranchRemoteInterface(context);
+    }
+
+    public void tearDown() throws Exception {
+        HttpsURLConnection.setDefaultSSLSocketFactory(defaultSocketFactory);
+        server.stop();
+        super.tearDown();
+    }
+
+    public void testGetReusesConnections() throws Exception {
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            remoteInterface.doRestfulGet(server.getUrl("v1/credits"));
+        }
+        report("GET", System.currentTimeMillis() - startTime);
+        assertEquals(REQUEST_COUNT, server.getRequestCount());
+        assertTrue(server.getConnectionCount() < REQUEST_COUNT / 10);
+        assertTrue(server.getHandshakeCount() < REQUEST_COUNT / 10);
+    }
+
+    public void testPostReusesConnections() throws Exception {
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            JSONObject payload = new JSONObject();
+            payload.put("event", "benchmark_" + i);
+            remoteInterface.doRestfulPost(server.getUrl("v1/event"), payload);
+        }
+        report("POST", System.currentTimeMillis() - startTime);
+        assertEquals(REQUEST_COUNT, server.getRequestCount());
+        assertTrue(server.getConnectionCount() < REQUEST_COUNT / 10);
+        assertTrue(server.getHandshakeCount() < REQUEST_COUNT / 10);
+    }
+
+    private void report(String method, long duration) {
+        Log.i("BranchSDK", String.format(Locale.US, "%s: %d connections and %d TLS handshakes for %d requests in %d ms",
+                method, server.getConnectionCount(), server.getHandshakeCount(), REQUEST_COUNT, duration));
+    }
+
+    private static KeyStore loadKeyStore(Context context) throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        InputStream input = context.getResources().openRawResource(R.raw.benchmark_keystore);
+        try {
+            keyStore.load(input, KEYSTORE_PASSWORD);
+        } finally {
+            input.close();
+        }
+        return keyStore;
+    }
+
+    /**
+     * @return Socket factory trusting only the certificate of the stand-in server
+     */
+    private static SSLSocketFactory createClientSocketFactory(KeyStore keyStore) throws IOException, GeneralSecurityException {
+        KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        trustStore.load(null, null);
+        trustStore.setCertificateEntry(KEYSTORE_ALIAS, keyStore.getCertificate(KEYSTORE_ALIAS));
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(trustStore);
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, trustManagerFactory.getTrustManagers(), null);
+        return sslContext.getSocketFactory();
+    }
+
+    /**
+     * Minimal HTTPS server answering every request with a fixed JSON body and keeping connections alive.
+     */
+    private static class StandInServer implements Runnable {
+        private final SSLServerSocket serverSocket;
+        private final AtomicInteger connectionCount = new AtomicInteger(0);
+        private final AtomicInteger handshakeCount = new AtomicInteger(0);
+        private final AtomicInteger requestCount = new AtomicInteger(0);
+
+        StandInServer(KeyStore keyStore) throws IOException, GeneralSecurityException {
+            KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagerFactory.init(keyStore, KEYSTORE_PASSWORD);
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+            serverSocket = (SSLServerSocket) sslContext.getServerSocketFactory()
+                    .createServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        }
+
+        void start() {
+            new Thread(this, "StandInServer").start();
+        }
+
+        void stop() throws IOException {
+            serverSocket.close();
+        }
+
+        String getUrl(String path) {
+            return "https://127.0.0.1:" + serverSocket.getLocalPort() + "/" + path;
+        }
+
+        int getConnectionCount() {
+            return connectionCount.get();
+        }
+
+        int getHandshakeCount() {
+            return handshakeCount.get();
+        }
+
+        int getRequestCount() {
+            return requestCount.get();
+        }
+
+        @Override
+        public void run() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    final SSLSocket socket = (SSLSocket) serverSocket.accept();
+                    connectionCount.incrementAndGet();
+                    socket.addHandshakeCompletedListener(new HandshakeCompletedListener() {
+                        @Override
+                        public void handshakeCompleted(HandshakeCompletedEvent event) {
+                            handshakeCount.incrementAndGet();
+                        }
+                    });
+                    new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            serve(socket);
+                        }
+                    }).start();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+
+        private void serve(SSLSocket socket) {
+            try {
+                socket.startHandshake();
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+                OutputStream output = socket.getOutputStream();
+                String requestLine;
+                while ((requestLine = reader.readLine()) != null) {
+                    if (requestLine.isEmpty()) {
+                        continue;
+                    }
+                    int contentLength = 0;
+                    boolean isChunked = false;
+                    String header;
+                    while ((header = reader.readLine()) != null && !header.isEmpty()) {
+                        String lowerCaseHeader = header.toLowerCase(Locale.US);
+                        if (lowerCaseHeader.startsWith("content-length:")) {
+                            contentLength = Integer.parseInt(header.substring(15).trim());
+                        } else if (lowerCaseHeader.startsWith("transfer-encoding:") && lowerCaseHeader.contains("chunked")) {
+                            isChunked = true;
+                        }
+                    }
+                    if (isChunked) {
+                        readChunkedBody(reader);
+                    } else if (reader.skip(contentLength) < contentLength) {
+                        break;
+                    }
+                    requestCount.incrementAndGet();
+                    byte[] body = RESPONSE_BODY.getBytes("UTF-8");
+                    String headers = "HTTP/1.1 200 OK\r\n"
+                            + "Content-Type: application/json\r\n"
+                            + "Content-Length: " + body.length + "\r\n"
+                            + "Connection: keep-alive\r\n\r\n";
+                    output.write(headers.getBytes("UTF-8"));
+                    output.write(body);
+                    output.flush();
+                }
+            } catch (IOException ignore) {
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+
+        private void readChunkedBody(BufferedReader reader) throws IOException {
+            String sizeLine;
+            while ((sizeLine = reader.readLine()) != null) {
+                int size = Integer.parseInt(sizeLine.split(";")[0].trim(), 16);
+                if (size == 0) {
+                    // Skip the trailers up to the empty line ending the body
+                    String trailer;
+                    while ((trailer = reader.readLine()) != null && !trailer.isEmpty()) {
+                        // Ignore trailers
+                    }
+                    return;
+                }
+                reader.skip(size);
+                reader.readLine();
+            }
+        }
+    }
+}
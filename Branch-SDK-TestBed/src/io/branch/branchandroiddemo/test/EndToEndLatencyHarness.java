@@ -0,0 +1,206 @@
+package io.branch.branchandroiddemo.test;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.branch.referral.Branch;
+import io.branch.referral.BranchError;
+import io.branch.referral.BranchShortLinkBuilder;
+import io.branch.referral.PrefHelper;
+import io.branch.referral.network.BranchRemoteInterface;
+
+/**
+ * Drives the real Branch request queue, from initSession and link creation through the request tasks to the
+ * callbacks, against {@link MockBranchApiServer}. Each scenario scripts the server, runs a number of sessions and
+ * reports the p50/p95/p99 latency of session initialisation and link creation, the requests per session and the
+ * bytes on the wire per session.
+ */
+public class EndToEndLatencyHarness extends InstrumentationTestCase {
+    private static final int SESSION_COUNT = 30;
+    private static final long CALLBACK_TIMEOUT = 30 * 1000;
+
+    private Context context;
+    private Branch branch;
+    private MockBranchApiServer server;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        context = getInstrumentation().getContext();
+        server = new MockBranchApiServer();
+        server.start();
+        branch = Branch.getInstance(context);
+        branch.setBranchRemoteInterface(new MockServerRemoteInterface(BranchRemoteInterface.getDefaultBranchRemoteInterface(context),
+                PrefHelper.getInstance(context).getAPIBaseUrl(), server.getBaseUrl()));
+    }
+
+    public void tearDown() throws Exception {
+        branch.setBranchRemoteInterface(BranchRemoteInterface.getDefaultBranchRemoteInterface(context));
+        branch.resetUserSession();
+        server.stop();
+        super.tearDown();
+    }
+
+    public void testNominalLatency() throws InterruptedException {
+        server.setLatency(MockBranchApiServer.OPEN, 50, 50);
+        server.setLatency(MockBranchApiServer.INSTALL, 50, 50);
+        server.setLatency(MockBranchApiServer.URL, 30, 30);
+        Report report = runSessions("nominal");
+        assertEquals(SESSION_COUNT, report.initLatencies.size());
+        assertEquals(SESSION_COUNT, report.linkLatencies.size());
+    }
+
+    public void testTailLatency() throws InterruptedException {
+        // Response times spread over a wide range, so that the tail is far from the median
+        server.setLatency(MockBranchApiServer.OPEN, 50, 1000);
+        server.setLatency(MockBranchApiServer.URL, 30, 300);
+        Report report = runSessions("tail latency");
+        assertEquals(SESSION_COUNT, report.initLatencies.size());
+    }
+
+    public void testServerErrors() throws InterruptedException {
+        server.setLatency(MockBranchApiServer.OPEN, 50, 50);
+        server.failNext(MockBranchApiServer.OPEN, 2, HttpURLConnection.HTTP_UNAVAILABLE);
+        Report report = runSessions("server errors");
+        assertEquals(SESSION_COUNT, report.initLatencies.size());
+    }
+
+    public void testTimeouts() throws InterruptedException {
+        int timeout = PrefHelper.getInstance(context).getTimeout();
+        branch.setNetworkTimeout(1000);
+        try {
+            server.setLatency(MockBranchApiServer.OPEN, 50, 50);
+            server.timeoutNext(MockBranchApiServer.OPEN, 1);
+            Report report = runSessions("timeouts");
+            assertEquals(SESSION_COUNT, report.initLatencies.size());
+        } finally {
+            branch.setNetworkTimeout(timeout);
+        }
+    }
+
+    private Report runSessions(String scenario) throws InterruptedException {
+        Report report = new Report();
+        for (int i = 0; i < SESSION_COUNT; i++) {
+            branch.resetUserSession();
+            long initLatency = initSession();
+            if (initLatency >= 0) {
+                report.initLatencies.add(initLatency);
+            }
+            long linkLatency = createLink(scenario + "_" + i);
+            if (linkLatency >= 0) {
+                report.linkLatencies.add(linkLatency);
+            }
+        }
+        Log.i("BranchSDK", String.format(Locale.US, "%s: init %s, link %s, %.1f requests and %d bytes per session, %d duplicates",
+                scenario, formatPercentiles(report.initLatencies), formatPercentiles(report.linkLatencies),
+                server.getRequestCount() / (double) SESSION_COUNT,
+                (server.getBytesReceived() + server.getBytesSent()) / SESSION_COUNT, server.getDuplicateCount()));
+        return report;
+    }
+
+    /**
+     * @return Time in milliseconds until the init callback. -1 if the session failed to initialise
+     */
+    private long initSession() throws InterruptedException {
+        final CountDownLatch signal = new CountDownLatch(1);
+        final AtomicBoolean isSucceeded = new AtomicBoolean(false);
+        long startTime = SystemClock.elapsedRealtime();
+        branch.initSession(new Branch.BranchReferralInitListener() {
+            @Override
+            public void onInitFinished(JSONObject referringParams, BranchError error) {
+                isSucceeded.set(error == null);
+                signal.countDown();
+            }
+        });
+        boolean isFinished = signal.await(CALLBACK_TIMEOUT, TimeUnit.MILLISECONDS);
+        long latency = SystemClock.elapsedRealtime() - startTime;
+        return isFinished && isSucceeded.get() ? latency : -1;
+    }
+
+    /**
+     * @return Time in milliseconds until the link create callback. -1 if the link was not created
+     */
+    private long createLink(String channel) throws InterruptedException {
+        final CountDownLatch signal = new CountDownLatch(1);
+        final AtomicBoolean isSucceeded = new AtomicBoolean(false);
+        long startTime = SystemClock.elapsedRealtime();
+        new BranchShortLinkBuilder(context)
+                .setChannel(channel)
+                .generateShortUrl(new Branch.BranchLinkCreateListener() {
+                    @Override
+                    public void onLinkCreate(String url, BranchError error) {
+                        isSucceeded.set(error == null && url != null);
+                        signal.countDown();
+                    }
+                });
+        boolean isFinished = signal.await(CALLBACK_TIMEOUT, TimeUnit.MILLISECONDS);
+        long latency = SystemClock.elapsedRealtime() - startTime;
+        return isFinished && isSucceeded.get() ? latency : -1;
+    }
+
+    private static String formatPercentiles(List<Long> latencies) {
+        if (latencies.isEmpty()) {
+            return "no samples";
+        }
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        return String.format(Locale.US, "p50 %d ms p95 %d ms p99 %d ms",
+                getPercentile(sorted, 50), getPercentile(sorted, 95), getPercentile(sorted, 99));
+    }
+
+    private static long getPercentile(List<Long> sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+
+    private static class Report {
+        final List<Long> initLatencies = new ArrayList<>();
+        final List<Long> linkLatencies = new ArrayList<>();
+    }
+
+    /**
+     * Sends the requests of the SDK to the mock server through the default network layer.
+     */
+    private static class MockServerRemoteInterface extends BranchRemoteInterface {
+        private final BranchRemoteInterface remoteInterface;
+        private final String apiBaseUrl;
+        private final String mockBaseUrl;
+
+        MockServerRemoteInterface(BranchRemoteInterface remoteInterface, String apiBaseUrl, String mockBaseUrl) {
+            this.remoteInterface = remoteInterface;
+            this.apiBaseUrl = apiBaseUrl;
+            this.mockBaseUrl = mockBaseUrl;
+        }
+
+        @Override
+        public BranchResponse doRestfulGet(String url) throws BranchRemoteException {
+            return remoteInterface.doRestfulGet(toMockUrl(url));
+        }
+
+        @Override
+        public BranchResponse doRestfulPost(String url, JSONObject payload) throws BranchRemoteException {
+            return remoteInterface.doRestfulPost(toMockUrl(url), payload);
+        }
+
+        @Override
+        public BranchResponse doRestfulPost(String url, JSONObject payload, String idempotencyKey) throws BranchRemoteException {
+            return remoteInterface.doRestfulPost(toMockUrl(url), payload, idempotencyKey);
+        }
+
+        private String toMockUrl(String url) {
+            return url.startsWith(apiBaseUrl) ? mockBaseUrl + url.substring(apiBaseUrl.length()) : url;
+        }
+    }
+}
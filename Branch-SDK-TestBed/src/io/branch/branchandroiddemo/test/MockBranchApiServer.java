@@ -0,0 +1,392 @@
+package io.branch.branchandroiddemo.test;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the v1 endpoints of the Branch API used by a session: open, install, url, event, credits and
+ * close. Latency, error responses and timeouts can be scripted per endpoint. POST requests carrying an
+ * Idempotency-Key header already seen get the response of the first request, so hedged requests and retries are
+ * executed once.
+ * Requests and bytes on the wire are counted.
+ */
+public class MockBranchApiServer implements Runnable {
+    public static final String OPEN = "v1/open";
+    public static final String INSTALL = "v1/install";
+    public static final String URL = "v1/url";
+    public static final String EVENT = "v1/event";
+    public static final String CREDITS = "v1/credits/";
+    public static final String CLOSE = "v1/close";
+    private static final String[] ENDPOINTS = {OPEN, INSTALL, URL, EVENT, CREDITS, CLOSE};
+
+    public static final String SESSION_ID = "mock_session_id";
+    public static final String IDENTITY_ID = "mock_identity_id";
+    public static final String DEVICE_FINGERPRINT_ID = "mock_device_fingerprint_id";
+    private static final String IDEMPOTENCY_KEY_HEADER = "idempotency-key";
+
+    private final ServerSocket serverSocket;
+    private final Random random = new Random();
+    private final Map<String, Script> scripts = new HashMap<>();
+    private final ConcurrentHashMap<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+    private final Map<String, Response> responsesByIdempotencyKey = new ConcurrentHashMap<>();
+    private final AtomicInteger duplicateCount = new AtomicInteger(0);
+    private final AtomicInteger linkCount = new AtomicInteger(0);
+    private final AtomicLong bytesReceived = new AtomicLong(0);
+    private final AtomicLong bytesSent = new AtomicLong(0);
+
+    public MockBranchApiServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    }
+
+    public void start() {
+        new Thread(this, "MockBranchApiServer").start();
+    }
+
+    public void stop() throws IOException {
+        serverSocket.close();
+    }
+
+    /**
+     * @return Base url of the server in the form of the Branch API base url
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/";
+    }
+
+    //----------- Scripting -----------//
+
+    /**
+     * Delays the responses of an endpoint by a latency drawn uniformly between latency and latency + jitter.
+     */
+    public synchronized void setLatency(String endpoint, long latency, long jitter) {
+        Script script = getScript(endpoint);
+        script.latency = latency;
+        script.jitter = jitter;
+    }
+
+    /**
+     * Answers the next requests to an endpoint with the given HTTP status code.
+     */
+    public synchronized void failNext(String endpoint, int count, int statusCode) {
+        Script script = getScript(endpoint);
+        script.failureCount = count;
+        script.failureStatusCode = statusCode;
+    }
+
+    /**
+     * Leaves the next requests to an endpoint unanswered until the client gives up.
+     */
+    public synchronized void timeoutNext(String endpoint, int count) {
+        getScript(endpoint).timeoutCount = count;
+    }
+
+    /**
+     * Clears the scripts and the counters.
+     */
+    public synchronized void reset() {
+        scripts.clear();
+        requestCounts.clear();
+        responsesByIdempotencyKey.clear();
+        duplicateCount.set(0);
+        bytesReceived.set(0);
+        bytesSent.set(0);
+    }
+
+    //----------- Counters -----------//
+
+    public int getRequestCount(String endpoint) {
+        AtomicInteger count = requestCounts.get(endpoint);
+        return count == null ? 0 : count.get();
+    }
+
+    public int getRequestCount() {
+        int count = 0;
+        for (AtomicInteger endpointCount : requestCounts.values()) {
+            count += endpointCount.get();
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of requests answered from the response of an earlier request with the same idempotency key
+     */
+    public int getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    //----------- Serving -----------//
+
+    @Override
+    public void run() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                }).start();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            InputStream input = new BufferedInputStream(socket.getInputStream());
+            OutputStream output = socket.getOutputStream();
+            String requestLine;
+            while ((requestLine = readLine(input)) != null) {
+                if (requestLine.isEmpty()) {
+                    continue;
+                }
+                Map<String, String> headers = new HashMap<>();
+                String header;
+                while ((header = readLine(input)) != null && !header.isEmpty()) {
+                    int separator = header.indexOf(':');
+                    if (separator > 0) {
+                        headers.put(header.substring(0, separator).trim().toLowerCase(Locale.US), header.substring(separator + 1).trim());
+                    }
+                }
+                byte[] body = readBody(input, headers);
+                if (body == null) {
+                    break;
+                }
+                String[] requestParts = requestLine.split(" ");
+                String path = requestParts.length > 1 ? requestParts[1] : "/";
+                Response response = handle(path, headers.get(IDEMPOTENCY_KEY_HEADER));
+                if (response == null) {
+                    // Hold the request until the client times out and closes the connection
+                    while (input.read() != -1) {
+                        // Discard
+                    }
+                    break;
+                }
+                byte[] responseBody = response.body.getBytes("UTF-8");
+                String responseHeaders = "HTTP/1.1 " + response.statusCode + " Mock\r\n"
+                        + "Content-Type: application/json; charset=utf-8\r\n"
+                        + "Content-Length: " + responseBody.length + "\r\n"
+                        + "Connection: keep-alive\r\n\r\n";
+                byte[] responseHead = responseHeaders.getBytes("UTF-8");
+                output.write(responseHead);
+                output.write(responseBody);
+                output.flush();
+                bytesSent.addAndGet(responseHead.length + responseBody.length);
+            }
+        } catch (IOException ignore) {
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    /**
+     * Applies the script of the endpoint and builds the response.
+     *
+     * @return The response. Null if the request should time out
+     */
+    private Response handle(String path, String idempotencyKey) {
+        String endpoint = getEndpoint(path);
+        requestCounts.putIfAbsent(endpoint, new AtomicInteger(0));
+        requestCounts.get(endpoint).incrementAndGet();
+
+        long latency;
+        boolean isTimeout = false;
+        int failureStatusCode = 0;
+        synchronized (this) {
+            Script script = scripts.get(endpoint);
+            latency = script == null ? 0 : script.latency + (script.jitter > 0 ? (long) (random.nextDouble() * script.jitter) : 0);
+            if (script != null && script.timeoutCount > 0) {
+                script.timeoutCount--;
+                isTimeout = true;
+            } else if (script != null && script.failureCount > 0) {
+                script.failureCount--;
+                failureStatusCode = script.failureStatusCode;
+            }
+        }
+        if (isTimeout) {
+            return null;
+        }
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException ignore) {
+            }
+        }
+        if (failureStatusCode > 0) {
+            return new Response(failureStatusCode, "{\"error\":{\"code\":" + failureStatusCode + ",\"message\":\"Injected failure\"}}");
+        }
+
+        if (idempotencyKey != null) {
+            Response earlierResponse = responsesByIdempotencyKey.get(idempotencyKey);
+            if (earlierResponse != null) {
+                duplicateCount.incrementAndGet();
+                return earlierResponse;
+            }
+        }
+        Response response = createResponse(endpoint);
+        if (idempotencyKey != null && response.statusCode == 200) {
+            responsesByIdempotencyKey.put(idempotencyKey, response);
+        }
+        return response;
+    }
+
+    private Response createResponse(String endpoint) {
+        try {
+            JSONObject response = new JSONObject();
+            if (OPEN.equals(endpoint) || INSTALL.equals(endpoint)) {
+                response.put("session_id", SESSION_ID);
+                response.put("identity_id", IDENTITY_ID);
+                response.put("device_fingerprint_id", DEVICE_FINGERPRINT_ID);
+                response.put("link", "https://mock.app.link?%24identity_id=" + IDENTITY_ID);
+                response.put("data", "{\"+clicked_branch_link\":false,\"+is_first_session\":" + INSTALL.equals(endpoint) + "}");
+            } else if (URL.equals(endpoint)) {
+                response.put("url", "https://mock.app.link/" + linkCount.incrementAndGet());
+            } else if (CREDITS.equals(endpoint)) {
+                response.put("default", 0);
+            } else if (!EVENT.equals(endpoint) && !CLOSE.equals(endpoint)) {
+                return new Response(404, "{\"error\":{\"code\":404,\"message\":\"Unknown endpoint\"}}");
+            }
+            return new Response(200, response.toString());
+        } catch (JSONException ex) {
+            return new Response(500, "{}");
+        }
+    }
+
+    private static String getEndpoint(String path) {
+        String endpoint = path.startsWith("/") ? path.substring(1) : path;
+        int queryStart = endpoint.indexOf('?');
+        if (queryStart >= 0) {
+            endpoint = endpoint.substring(0, queryStart);
+        }
+        for (String knownEndpoint : ENDPOINTS) {
+            if (endpoint.startsWith(knownEndpoint)) {
+                return knownEndpoint;
+            }
+        }
+        return endpoint;
+    }
+
+    private byte[] readBody(InputStream input, Map<String, String> headers) throws IOException {
+        String transferEncoding = headers.get("transfer-encoding");
+        if (transferEncoding != null && transferEncoding.toLowerCase(Locale.US).contains("chunked")) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            String sizeLine;
+            while ((sizeLine = readLine(input)) != null) {
+                int size = Integer.parseInt(sizeLine.split(";")[0].trim(), 16);
+                if (size == 0) {
+                    // Skip the trailers up to the empty line ending the body
+                    String trailer;
+                    while ((trailer = readLine(input)) != null && !trailer.isEmpty()) {
+                        // Ignore trailers
+                    }
+                    return body.toByteArray();
+                }
+                byte[] chunk = readFully(input, size);
+                if (chunk == null) {
+                    return null;
+                }
+                body.write(chunk);
+                readLine(input);
+            }
+            return null;
+        }
+        String contentLength = headers.get("content-length");
+        return readFully(input, contentLength != null ? Integer.parseInt(contentLength) : 0);
+    }
+
+    /**
+     * Reads the given number of bytes.
+     *
+     * @return The bytes read. Null if the stream ended early
+     */
+    private byte[] readFully(InputStream input, int length) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(length);
+        byte[] buffer = new byte[4096];
+        while (bytes.size() < length) {
+            int count = input.read(buffer, 0, Math.min(buffer.length, length - bytes.size()));
+            if (count == -1) {
+                return null;
+            }
+            bytes.write(buffer, 0, count);
+        }
+        bytesReceived.addAndGet(bytes.size());
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a CRLF terminated line of ASCII text.
+     *
+     * @return The line without its terminator. Null at the end of the stream
+     */
+    private String readLine(InputStream input) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = input.read()) != -1) {
+            bytesReceived.incrementAndGet();
+            if (c == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.length() > 0 ? line.toString() : null;
+    }
+
+    private Script getScript(String endpoint) {
+        Script script = scripts.get(endpoint);
+        if (script == null) {
+            script = new Script();
+            scripts.put(endpoint, script);
+        }
+        return script;
+    }
+
+    private static class Script {
+        long latency;
+        long jitter;
+        int failureCount;
+        int failureStatusCode;
+        int timeoutCount;
+    }
+
+    private static class Response {
+        final int statusCode;
+        final String body;
+
+        Response(int statusCode, String body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+    }
+}
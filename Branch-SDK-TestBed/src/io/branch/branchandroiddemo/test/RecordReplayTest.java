@@ -0,0 +1,72 @@
+package io.branch.branchandroiddemo.test;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+
+import org.json.JSONObject;
+
+import java.io.File;
+
+import io.branch.referral.BranchError;
+import io.branch.referral.network.BranchRecordingRemoteInterface;
+import io.branch.referral.network.BranchRemoteInterface;
+import io.branch.referral.network.BranchReplayRemoteInterface;
+
+/**
+ * Records requests made against {@link MockBranchApiServer} and replays them without the server.
+ */
+public class RecordReplayTest extends InstrumentationTestCase {
+    private MockBranchApiServer server;
+    private File recordingFile;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        Context context = getInstrumentation().getContext();
+        server = new MockBranchApiServer();
+        server.start();
+        recordingFile = new File(context.getCacheDir(), "branch_recording.jsonl");
+        recordingFile.delete();
+    }
+
+    public void tearDown() throws Exception {
+        server.stop();
+        recordingFile.delete();
+        super.tearDown();
+    }
+
+    public void testReplayServesRecordedResponses() throws Exception {
+        server.setLatency(MockBranchApiServer.OPEN, 200, 0);
+        server.timeoutNext(MockBranchApiServer.EVENT, 1);
+        BranchRecordingRemoteInterface recorder = new BranchRecordingRemoteInterface(
+                BranchRemoteInterface.getDefaultBranchRemoteInterface(getInstrumentation().getContext()), recordingFile);
+        BranchRemoteInterface.BranchResponse recordedOpen = recorder.doRestfulPost(server.getBaseUrl() + MockBranchApiServer.OPEN, new JSONObject());
+        BranchRemoteInterface.BranchResponse recordedCredits = recorder.doRestfulGet(server.getBaseUrl() + MockBranchApiServer.CREDITS + "recorded_identity");
+        int recordedEventError = 0;
+        try {
+            recorder.doRestfulPost(server.getBaseUrl() + MockBranchApiServer.EVENT, new JSONObject());
+        } catch (BranchRemoteInterface.BranchRemoteException ex) {
+            recordedEventError = ex.getBranchErrorCode();
+        }
+        recorder.close();
+        assertEquals(BranchError.ERR_BRANCH_REQ_TIMED_OUT, recordedEventError);
+
+        // Served without delay and against another host and identity
+        BranchReplayRemoteInterface replayer = new BranchReplayRemoteInterface(recordingFile, 0);
+        long startTime = SystemClock.elapsedRealtime();
+        BranchRemoteInterface.BranchResponse replayedOpen = replayer.doRestfulPost("https://api.example.com/v1/open", new JSONObject());
+        assertTrue(SystemClock.elapsedRealtime() - startTime < 200);
+        assertEquals(recordedOpen.getResponseCode(), replayedOpen.getResponseCode());
+        assertEquals(recordedOpen.getResponseData(), replayedOpen.getResponseData());
+
+        BranchRemoteInterface.BranchResponse replayedCredits = replayer.doRestfulGet("https://api.example.com/v1/credits/other_identity");
+        assertEquals(recordedCredits.getResponseData(), replayedCredits.getResponseData());
+
+        try {
+            replayer.doRestfulPost("https://api.example.com/v1/event", new JSONObject());
+            fail("Recorded timeout was not replayed");
+        } catch (BranchRemoteInterface.BranchRemoteException ex) {
+            assertEquals(BranchError.ERR_BRANCH_REQ_TIMED_OUT, ex.getBranchErrorCode());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package io.branch.referral;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.branch.referral.network.BranchRemoteInterface;
+
+/**
+ * Requests held while the device was offline during session initialisation are sent once connectivity returns,
+ * without the app calling initSession again. Lives in the SDK package to simulate connectivity changes.
+ */
+public class BranchOfflineInitTest extends InstrumentationTestCase {
+    private static final long CALLBACK_TIMEOUT = 10 * 1000;
+
+    private Context context;
+    private Branch branch;
+    private OfflineRemoteInterface remoteInterface;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        context = getInstrumentation().getContext();
+        branch = Branch.getInstance(context);
+        branch.resetUserSession();
+        remoteInterface = new OfflineRemoteInterface();
+        branch.setBranchRemoteInterface(remoteInterface);
+    }
+
+    public void tearDown() throws Exception {
+        branch.getNetworkMonitor().onConnectivityChanged(true);
+        branch.setBranchRemoteInterface(BranchRemoteInterface.getDefaultBranchRemoteInterface(context));
+        branch.resetUserSession();
+        super.tearDown();
+    }
+
+    public void testQueueDrainsWhenBackOnline() throws InterruptedException {
+        ServerRequestQueue requestQueue = ServerRequestQueue.getInstance(context);
+        remoteInterface.isOffline_ = true;
+        branch.getNetworkMonitor().onConnectivityChanged(false);
+
+        final CountDownLatch signal = new CountDownLatch(1);
+        final AtomicReference<BranchError> initError = new AtomicReference<>();
+        branch.initSession(new Branch.BranchReferralInitListener() {
+            @Override
+            public void onInitFinished(JSONObject referringParams, BranchError error) {
+                initError.set(error);
+                signal.countDown();
+            }
+        });
+        branch.userCompletedAction("offline_action");
+        assertTrue(signal.await(CALLBACK_TIMEOUT, TimeUnit.MILLISECONDS));
+        assertNotNull(initError.get());
+        assertEquals(BranchError.ERR_BRANCH_NO_CONNECTIVITY, initError.get().getErrorCode());
+        assertTrue(requestQueue.getSize() > 0);
+
+        remoteInterface.isOffline_ = false;
+        branch.getNetworkMonitor().onConnectivityChanged(true);
+        long deadline = SystemClock.elapsedRealtime() + CALLBACK_TIMEOUT;
+        while (requestQueue.getSize() > 0 && SystemClock.elapsedRealtime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, requestQueue.getSize());
+        assertTrue(remoteInterface.sessionCount_ > 0);
+    }
+
+    /**
+     * Fails every request for lack of connectivity while offline, and answers every request otherwise.
+     */
+    private static class OfflineRemoteInterface extends BranchRemoteInterface {
+        volatile boolean isOffline_;
+        volatile int sessionCount_;
+
+        @Override
+        public BranchResponse doRestfulGet(String url) throws BranchRemoteException {
+            return respond(url);
+        }
+
+        @Override
+        public BranchResponse doRestfulPost(String url, JSONObject payload) throws BranchRemoteException {
+            return respond(url);
+        }
+
+        private BranchResponse respond(String url) throws BranchRemoteException {
+            if (isOffline_) {
+                throw new BranchRemoteException(BranchError.ERR_BRANCH_NO_CONNECTIVITY);
+            }
+            if (url.contains("v1/open") || url.contains("v1/install")) {
+                sessionCount_++;
+                return new BranchResponse("{\"session_id\":\"offline_session_id\",\"identity_id\":\"offline_identity_id\","
+                        + "\"device_fingerprint_id\":\"offline_device_fingerprint_id\",\"link\":\"https://mock.app.link\","
+                        + "\"data\":\"{\\\"+clicked_branch_link\\\":false}\"}", 200);
+            }
+            return new BranchResponse("{}", 200);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package io.branch.referral;
+
+import android.content.Context;
+import android.test.InstrumentationTestCase;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Replay and compaction of the {@link ServerRequestQueueJournal}, including journals left corrupted by a crash.
+ * Lives in the SDK package since the journal is package private.
+ */
+public class ServerRequestQueueJournalTest extends InstrumentationTestCase {
+    private static final String JOURNAL_FILE = "branch_test_queue.journal";
+    // length (4) + checksum (8) + operation (1) + index (4)
+    private static final int RECORD_HEADER_SIZE = 17;
+
+    private Context context;
+    private File journalFile;
+    private File tempFile;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        context = getInstrumentation().getContext();
+        journalFile = new File(context.getFilesDir(), JOURNAL_FILE);
+        tempFile = new File(context.getFilesDir(), JOURNAL_FILE + ".tmp");
+        journalFile.delete();
+        tempFile.delete();
+    }
+
+    public void tearDown() throws Exception {
+        journalFile.delete();
+        tempFile.delete();
+        super.tearDown();
+    }
+
+    public void testReplayAppliesRecordsInOrder() throws JSONException {
+        ServerRequestQueueJournal journal = new ServerRequestQueueJournal(context, JOURNAL_FILE);
+        journal.logAdd(0, request("a"));
+        journal.logAdd(1, request("b"));
+        journal.logAdd(0, request("c"));
+        journal.logRemove(1);
+        journal.writePending(snapshotOf());
+
+        ServerRequestQueueJournal restored = new ServerRequestQueueJournal(context, JOURNAL_FILE);
+        assertEquals(Arrays.asList("c", "b"), names(restored.replay()));
+        assertFalse(restored.hasCorruptedTail());
+    }
+
+    public void testReplayStopsAtChecksumMismatch() throws JSONException, IOException {
+        ServerRequestQueueJournal journal = new ServerRequestQueueJournal(context, JOURNAL_FILE);
+        journal.logAdd(0, request("a"));
+        journal.logAdd(1, request("b"));
+        journal.logAdd(2, request("c"));
+        journal.writePending(snapshotOf());
+
+        // Flip the first payload byte of the second record
+        long offset = recordSize(request("a")) + RECORD_HEADER_SIZE;
+        RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+        try {
+            file.seek(offset);
+            int value = file.read();
+            file.seek(offset);
+            file.write(value ^ 0xFF);
+        } finally {
+            file.close();
+        }
+
+        ServerRequestQueueJournal restored = new ServerRequestQueueJournal(context, JOURNAL_FILE);
+        assertEquals(Arrays.asList("a"), names(restored.replay()));
+        assertTrue(restored.hasCorruptedTail());
+    }
+
+    public void testReplayStopsAtTruncatedTail() throws JSONException, IOException {
+        ServerRequestQueueJournal journal = new ServerRequestQueueJournal(context, JOURNAL_FILE);
+        journal.logAdd(0, request("a"));
+        journal.logAdd(1, request("b"));
+        journal.writePending(snapshotOf());
+
+        // Cut the last record short, as a crash in the middle of a write would
+        RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+        try {
+            file.setLength(file.length() - 3);
+        } finally {
+            file.close();
+        }
+
+        ServerRequestQueueJournal restored = new ServerRequestQueueJournal(context, JOURNAL_FILE);
+        assertEquals(Arrays.asList("a"), names(restored.replay()));
+        assertTrue(restored.hasCorruptedTail());
+    }
+
+    public void testCompactReplacesJournalWithSnapshot() throws JSONException, IOException {
+        ServerRequestQueueJournal journal = new ServerRequestQueueJournal(context, JOURNAL_FILE);
+        journal.logAdd(0, request("a"));
+        journal.logAdd(1, request("b"));
+        journal.logRemove(0);
+        journal.logAdd(1, request("c"));
+        journal.writePending(snapshotOf());
+        // Leave a truncated record behind, which the compaction drops
+        RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+        try {
+            file.setLength(file.length() - 1);
+        } finally {
+            file.close();
+        }
+        journal.replay();
+        assertTrue(journal.hasCorruptedTail());
+
+        journal.compact(snapshotOf(request("b"), request("c")));
+        assertFalse(tempFile.exists());
+        assertFalse(journal.hasCorruptedTail());
+        assertEquals(recordSize(request("b")) + recordSize(request("c")), journalFile.length());
+
+        ServerRequestQueueJournal restored = new ServerRequestQueueJournal(context, JOURNAL_FILE);
+        assertEquals(Arrays.asList("b", "c"), names(restored.replay()));
+        assertFalse(restored.hasCorruptedTail());
+    }
+
+    public void testRecordsAfterCompactionAreReplayed() throws JSONException {
+        ServerRequestQueueJournal journal = new ServerRequestQueueJournal(context, JOURNAL_FILE);
+        journal.compact(snapshotOf(request("a")));
+        journal.logAdd(1, request("b"));
+        journal.writePending(snapshotOf());
+
+        ServerRequestQueueJournal restored = new ServerRequestQueueJournal(context, JOURNAL_FILE);
+        assertEquals(Arrays.asList("a", "b"), names(restored.replay()));
+    }
+
+    private static JSONObject request(String name) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("name", name);
+        return json;
+    }
+
+    private static long recordSize(JSONObject json) {
+        try {
+            return RECORD_HEADER_SIZE + json.toString().getBytes("UTF-8").length;
+        } catch (IOException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    private static List<String> names(List<JSONObject> queue) {
+        List<String> names = new ArrayList<>();
+        for (JSONObject json : queue) {
+            names.add(json == null ? null : json.optString("name"));
+        }
+        return names;
+    }
+
+    private static ServerRequestQueueJournal.SnapshotSource snapshotOf(final JSONObject... requests) {
+        return new ServerRequestQueueJournal.SnapshotSource() {
+            @Override
+            public List<JSONObject> takeSnapshot() {
+                return Arrays.asList(requests);
+            }
+        };
+    }
+}
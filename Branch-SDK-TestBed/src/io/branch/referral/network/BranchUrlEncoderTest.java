@@ -0,0 +1,79 @@
+package io.branch.referral.network;
+
+import android.test.InstrumentationTestCase;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import io.branch.referral.BuildConfig;
+
+/**
+ * Percent encoding and GET url building of {@link BranchUrlEncoder}. Lives in the SDK package since building the url
+ * is package private.
+ */
+public class BranchUrlEncoderTest extends InstrumentationTestCase {
+    private static final String BRANCH_KEY = "key_live_abc";
+    private static final String URL = "https://api.branch.io/v1/credits/identity";
+
+    public void testUnreservedCharactersAreKept() {
+        assertEquals("aZ09-._~", BranchUrlEncoder.encode("aZ09-._~"));
+    }
+
+    public void testReservedCharactersAreEncoded() {
+        assertEquals("%20%21%23%24%26%27%28%29%2A%2B%2C%2F%3A%3B%3D%3F%40%5B%5D%25",
+                BranchUrlEncoder.encode(" !#$&'()*+,/:;=?@[]%"));
+    }
+
+    public void testMultiByteCharactersAreEncodedAsUtf8() {
+        assertEquals("%C3%A9", BranchUrlEncoder.encode("\u00E9"));
+        assertEquals("%E2%82%AC", BranchUrlEncoder.encode("\u20AC"));
+    }
+
+    public void testSurrogatePairIsEncodedAsOneCodePoint() {
+        assertEquals("%F0%9F%98%80", BranchUrlEncoder.encode("\uD83D\uDE00"));
+    }
+
+    public void testUnpairedSurrogateIsEncodedAsReplacementCharacter() {
+        assertEquals("a%EF%BF%BDb", BranchUrlEncoder.encode("a\uD83Db"));
+        assertEquals("a%EF%BF%BD", BranchUrlEncoder.encode("a\uDE00"));
+        assertEquals("%EF%BF%BD", BranchUrlEncoder.encode("\uD83D"));
+    }
+
+    public void testGetUrlWithoutParams() {
+        assertEquals(URL + "?retryNumber=0&" + commonParams(), BranchUrlEncoder.buildGetUrl(URL, null, BRANCH_KEY));
+    }
+
+    public void testGetUrlEncodesParams() throws JSONException {
+        JSONObject params = new JSONObject();
+        params.put("bucket", "a b&c");
+        assertEquals(URL + "?bucket=a%20b%26c&retryNumber=0&" + commonParams(),
+                BranchUrlEncoder.buildGetUrl(URL, params, BRANCH_KEY));
+    }
+
+    public void testGetUrlAppendsToExistingQuery() {
+        assertEquals(URL + "?a=1&retryNumber=0&" + commonParams(), BranchUrlEncoder.buildGetUrl(URL + "?a=1", null, BRANCH_KEY));
+    }
+
+    public void testGetUrlKeepsCallerRetryNumber() throws JSONException {
+        JSONObject params = new JSONObject();
+        params.put(BranchRemoteInterface.RETRY_NUMBER, 2);
+        assertEquals(URL + "?retryNumber=2&" + commonParams(), BranchUrlEncoder.buildGetUrl(URL, params, BRANCH_KEY));
+    }
+
+    public void testGetUrlDropsDuplicateCommonParams() throws JSONException {
+        JSONObject params = new JSONObject();
+        params.put("sdk", "other");
+        params.put("branch_key", "key_live_other");
+        assertEquals(URL + "?retryNumber=0&" + commonParams(), BranchUrlEncoder.buildGetUrl(URL, params, BRANCH_KEY));
+    }
+
+    public void testCommonParamsFollowTheBranchKey() {
+        BranchUrlEncoder.buildGetUrl(URL, null, BRANCH_KEY);
+        assertEquals(URL + "?retryNumber=0&sdk=android" + BuildConfig.VERSION_NAME + "&branch_key=key_test_x%2By",
+                BranchUrlEncoder.buildGetUrl(URL, null, "key_test_x+y"));
+    }
+
+    private static String commonParams() {
+        return "sdk=android" + BuildConfig.VERSION_NAME + "&branch_key=" + BRANCH_KEY;
+    }
+}
@@ -12,10 +12,12 @@ import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.BadParcelableException;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.StyleRes;
@@ -34,18 +36,24 @@ import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.branch.indexing.BranchUniversalObject;
 import io.branch.indexing.ContentDiscoverer;
@@ -68,7 +76,7 @@ import io.branch.referral.util.LinkProperties;
  * </pre>
  * -->
  */
-public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserver.GAdsParamsFetchEvents, InstallListener.IInstallReferrerEvents {
+public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserver.GAdsParamsFetchEvents, InstallListener.IInstallReferrerEvents, BranchNetworkMonitor.NetworkStateEvents {
 
     private static final String TAG = "BranchSDK";
 
@@ -290,6 +298,10 @@ public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserv
 
     private static boolean isLogging_ = false;
 
+    private static boolean isConnectionPrewarmEnabled_ = false;
+
+    private static boolean isInitSessionHedgingEnabled_ = false;
+
     static boolean checkInstallReferrer_ = true;
     private static long playStoreReferrerFetchTime = 1500;
     public static final long NO_PLAY_STORE_REFERRER_WAIT = 0;
@@ -307,16 +319,58 @@ public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserv
 
     final Object lock;
 
-    private Semaphore serverSema_;
-
     private ServerRequestQueue requestQueue_;
 
-    private int networkCount_;
+    /* Set while a thread dispatches requests. Only the thread setting it dispatches requests */
+    private final AtomicBoolean isDispatching_ = new AtomicBoolean(false);
+
+    /* Set when the queue need to be processed again, eg a request was queued during a dispatch pass */
+    private final AtomicBoolean isDispatchPending_ = new AtomicBoolean(false);
+
+    /* Requests currently executing */
+    private final Set<ServerRequest> inFlightRequests_;
+
+    /* Number of dispatches in progress in each lane */
+    private final Map<DispatchLane, AtomicInteger> laneDispatchCount_;
+
+    /* Maximum number of concurrent dispatches in each lane. */
+    private final Map<DispatchLane, Integer> laneConcurrency_;
 
-    private boolean hasNetwork_;
+    private volatile boolean hasNetwork_;
+
+    /* Monitors the device connectivity to hold requests while offline and drain them once back online. */
+    private final BranchNetworkMonitor networkMonitor_;
+
+    /* Parks requests while the Branch API hosts are failing and fails over to the fallback hosts. */
+    private final BranchCircuitBreaker circuitBreaker_;
 
     private Map<BranchLinkData, String> linkCache_;
 
+    /* Activity to auto deep link for the latest session. Resolved in background when the session is initialised. */
+    private volatile ActivityInfo autoDeepLinkActivity_;
+
+    /* Time window in milliseconds in which identical requests are merged. Zero disables coalescing. */
+    private long coalescingWindow_ = 0;
+
+    /* Provides the key identifying identical requests. Null to use the default key. */
+    private RequestCoalescingKeyProvider coalescingKeyProvider_;
+
+    private final Handler mainHandler_;
+
+    /* Elapsed realtime at which the queue is next processed for requests waiting to be retried. Guarded by queueKickRunnable_ */
+    private long scheduledQueueKickTime_ = 0;
+
+    private final Runnable queueKickRunnable_ = new Runnable() {
+        @Override
+        public void run() {
+            processNextQueueItem();
+        }
+    };
+
+    /* Requests which exhausted their retry budget */
+    private final ServerRequestDeadLetterStore deadLetterStore_;
+
+
 
     /* Set to true when application is instantiating {@BranchApp} by extending or adding manifest entry. */
     private static boolean isAutoSessionMode_ = false;
@@ -340,7 +394,7 @@ public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserv
     private boolean handleDelayedNewIntents_ = false;
 
     /* Holds the current Session state. Default is set to UNINITIALISED. */
-    private SESSION_STATE initState_ = SESSION_STATE.UNINITIALISED;
+    private volatile SESSION_STATE initState_ = SESSION_STATE.UNINITIALISED;
 
     /* Instance  of share link manager to share links automatically with third party applications. */
     private ShareLinkManager shareLinkManager_;
@@ -414,13 +468,26 @@ public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserv
     private Branch(@NonNull Context context) {
         prefHelper_ = PrefHelper.getInstance(context);
         branchRemoteInterface_ = BranchRemoteInterface.getDefaultBranchRemoteInterface(context);
+        if (isConnectionPrewarmEnabled_) {
+            prewarmConnection();
+        }
         systemObserver_ = new SystemObserver(context);
         requestQueue_ = ServerRequestQueue.getInstance(context);
-        serverSema_ = new Semaphore(1);
         lock = new Object();
-        networkCount_ = 0;
+        inFlightRequests_ = Collections.newSetFromMap(new ConcurrentHashMap<ServerRequest, Boolean>());
+        laneDispatchCount_ = new EnumMap<>(DispatchLane.class);
+        laneConcurrency_ = Collections.synchronizedMap(new EnumMap<DispatchLane, Integer>(DispatchLane.class));
+        for (DispatchLane lane : DispatchLane.values()) {
+            laneDispatchCount_.put(lane, new AtomicInteger(0));
+            laneConcurrency_.put(lane, 1);
+        }
         hasNetwork_ = true;
-        linkCache_ = new HashMap<>();
+        mainHandler_ = new Handler(Looper.getMainLooper());
+        deadLetterStore_ = new ServerRequestDeadLetterStore(context);
+        networkMonitor_ = new BranchNetworkMonitor(context, this);
+        circuitBreaker_ = new BranchCircuitBreaker(prefHelper_);
+        // Accessed from the main thread and while processing responses in background
+        linkCache_ = Collections.synchronizedMap(new HashMap<BranchLinkData, String>());
         instrumentationExtraData_ = new ConcurrentHashMap<>();
         isGAParamsFetchInProgress_ = systemObserver_.prefetchGAdsParams(this);
         InstallListener.setListener(this);
@@ -435,7 +502,23 @@ public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserv
         }
         externalUriWhiteList_ = new ArrayList<>();
         skipExternalUriHosts_ = new ArrayList<>();
+        // Started last since its callbacks may arrive on another thread and use any field of this instance
+        networkMonitor_.start();
+    }
 
+    /**
+     * Connects to the Branch API in background while the SDK waits for the advertising id, the install referrer
+     * and the intent, so that the init request finds a connection ready.
+     */
+    private void prewarmConnection() {
+        final BranchRemoteInterface remoteInterface = branchRemoteInterface_;
+        final String url = prefHelper_.getAPIBaseUrl();
+        BranchExecutor.getInstance().execute(new Runnable() {
+            @Override
+            public void run() {
+                remoteInterface.prewarmConnection(url);
+            }
+        }, BranchExecutor.PRIORITY_INTERACTIVE);
     }
 
     /**
@@ -764,6 +847,8 @@ public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserv
      * any Branch API call to have timed out. Default 3000 ms.</p>
      * <p>Increase this to perform better in low network speed situations, but at the expense of
      * responsiveness to error situation.</p>
+     * <p>Once enough round trip times of an endpoint are measured, its timeout adapts to them. This value
+     * is then the upper bound of the timeout.</p>
      *
      * @param timeout An {@link Integer} value specifying the number of milliseconds to wait before
      *                considering the request to have timed out.
@@ -774,6 +859,171 @@ public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserv
         }
     }
 
+    /**
+     * <p>Sets the lower bound of the timeouts adapted to the measured round trip times of the Branch API
+     * endpoints. Default 1500 ms.</p>
+     * <p>Adapted timeouts let requests to an unreachable server fail fast on a good network, while the
+     * timeout set with {@link #setNetworkTimeout(int)} remains the upper bound on slow networks.</p>
+     *
+     * @param minTimeout An {@link Integer} value specifying the minimum number of milliseconds to wait
+     *                   before considering the request to have timed out.
+     */
+    public void setMinNetworkTimeout(int minTimeout) {
+        if (prefHelper_ != null && minTimeout > 0) {
+            prefHelper_.setMinTimeout(minTimeout);
+        }
+    }
+
+    /**
+     * <p>Enables gzip compression of request bodies of at least the given size. Install and open requests carry
+     * device info and metadata which compress well, saving upload time on slow networks. Smaller bodies are
+     * sent as is, since compression would not pay off for them. Disabled by default.</p>
+     *
+     * @param threshold An {@link Integer} value specifying the minimum body size in bytes to compress.
+     *                  Zero disables compression.
+     */
+    public void setRequestCompressionThreshold(int threshold) {
+        if (prefHelper_ != null && threshold >= 0) {
+            prefHelper_.setRequestCompressionThreshold(threshold);
+        }
+    }
+
+    /**
+     * <p>Sets the maximum size of a response read from the Branch API. Reading a response stops at this size,
+     * and the request fails with {@link BranchError#ERR_BRANCH_RESPONSE_TOO_LARGE}, so that a faulty response can
+     * not exhaust the app memory. Default 1 MB.</p>
+     *
+     * @param maxSize An {@link Integer} value specifying the maximum response size in bytes.
+     */
+    public void setMaxResponseSize(int maxSize) {
+        if (prefHelper_ != null && maxSize > 0) {
+            prefHelper_.setMaxResponseSize(maxSize);
+        }
+    }
+
+    /**
+     * <p>Sets the time in milliseconds to wait for further changes to the request queue before persisting
+     * it. Requests queued within this window are written to storage together. Pending changes are always
+     * written when the app goes to background. Default 250 ms.</p>
+     *
+     * @param debounceWindow A {@link Long} value specifying the number of milliseconds to wait before
+     *                       persisting queue changes. Zero persists every change immediately.
+     */
+    public void setRequestQueuePersistenceDelay(long debounceWindow) {
+        if (requestQueue_ != null && debounceWindow >= 0) {
+            requestQueue_.setPersistenceDebounceWindow(debounceWindow);
+        }
+    }
+
+    /**
+     * <p>Sets the maximum number of concurrent dispatches to the Branch server in the given lane. Once a session
+     * exists, requests in different lanes are executed independently, so that a slow link creation does not hold
+     * back events and vice versa. Requests within a lane keep their order. Default 1 for every lane.</p>
+     * <p>Requests in {@link DispatchLane#SESSION} lane always execute one at a time after every request queued
+     * ahead of them, so this setting has no effect on that lane.</p>
+     *
+     * @param lane           The {@link DispatchLane} to configure
+     * @param maxConcurrency An {@link Integer} specifying the maximum number of concurrent dispatches in the lane
+     */
+    public void setDispatchLaneConcurrency(DispatchLane lane, int maxConcurrency) {
+        if (lane != null && maxConcurrency > 0) {
+            laneConcurrency_.put(lane, maxConcurrency);
+        }
+    }
+
+    /**
+     * <p>Enables merging of identical events and content view requests queued within the given time window.
+     * Instead of queuing a new request, the count of the identical queued request is incremented and sent
+     * with it. This avoids a network round trip for each double tap or re-rendered view. Requests with a
+     * callback are never merged. Disabled by default.</p>
+     *
+     * @param window      A {@link Long} specifying the window in milliseconds in which identical requests are
+     *                    merged. Zero disables coalescing.
+     * @param keyProvider A {@link RequestCoalescingKeyProvider} defining which requests are identical. Pass null
+     *                    to treat requests with the same path and parameters as identical.
+     */
+    public void setRequestCoalescing(long window, RequestCoalescingKeyProvider keyProvider) {
+        if (window >= 0) {
+            coalescingWindow_ = window;
+            coalescingKeyProvider_ = keyProvider;
+        }
+    }
+
+    /**
+     * <p>Sets the maximum number of requests held in the request queue, and the policy applied when a request
+     * is added to a full queue, for instance while the device is offline. Session requests are never dropped.
+     * Default capacity is 25 with {@link QueueOverflowPolicy#DROP_OLDEST} policy.</p>
+     *
+     * @param capacity       An {@link Integer} specifying the maximum number of queued requests.
+     * @param overflowPolicy The {@link QueueOverflowPolicy} applied when the queue is full.
+     */
+    public void setRequestQueueCapacity(int capacity, QueueOverflowPolicy overflowPolicy) {
+        if (requestQueue_ != null && capacity > 1 && overflowPolicy != null) {
+            requestQueue_.setCapacity(capacity, overflowPolicy);
+        }
+    }
+
+    /**
+     * <p>Returns the number of requests dropped because the request queue was full since the app started.
+     * Useful for sizing the queue with {@link #setRequestQueueCapacity(int, QueueOverflowPolicy)}.</p>
+     *
+     * @return An {@link Integer} count of dropped requests.
+     */
+    public int getDroppedRequestCount() {
+        return requestQueue_.getDroppedRequestCount();
+    }
+
+    /**
+     * <p>Returns the number of requests moved to the disk backed overflow store because the request queue was
+     * full since the app started. See {@link QueueOverflowPolicy#SPILL_TO_DISK}.</p>
+     *
+     * @return An {@link Integer} count of spilled requests.
+     */
+    public int getSpilledRequestCount() {
+        return requestQueue_.getSpilledRequestCount();
+    }
+
+    /**
+     * <p>Returns the requests which were given up after exhausting their retry budget. Each entry is a
+     * {@link JSONObject} with the request path, the request parameters, the number of attempts, and the
+     * status code, reason and time of the last failure. The most recent 50 requests are kept.</p>
+     *
+     * @return A {@link JSONArray} of failed requests, oldest first.
+     */
+    public JSONArray getDeadLetterRequests() {
+        return deadLetterStore_.getEntries();
+    }
+
+    /**
+     * <p>Clears the requests returned by {@link #getDeadLetterRequests()}.</p>
+     */
+    public void clearDeadLetterRequests() {
+        deadLetterStore_.clear();
+    }
+
+    /**
+     * <p>Sets the base urls of hosts serving the Branch API, used in order when the default host keeps
+     * failing with server errors or timeouts. While every host is failing, requests are held in the queue
+     * and a single request periodically probes the hosts. By default there are no fallback hosts.</p>
+     *
+     * @param baseUrls A {@link List} of base urls, such as "https://api.example.com/". Null for none.
+     */
+    public void setFallbackApiUrls(List<String> baseUrls) {
+        circuitBreaker_.setFallbackBaseUrls(baseUrls);
+    }
+
+    /**
+     * <p>Sets the {@link Executor} running the background work of the SDK, such as network requests and
+     * persistence, so that it is budgeted alongside the background work of the app. By default the SDK runs
+     * its work on a small set of its own background threads. Should be called before {@link #getInstance(Context)}
+     * to also cover the work done during initialisation.</p>
+     *
+     * @param executor The {@link Executor} to run SDK work. Pass null to use the SDK threads.
+     */
+    public static void setSdkExecutor(Executor executor) {
+        BranchExecutor.getInstance().setExecutor(executor);
+    }
+
     /**
      * Method to control reading Android ID from device. Set this to true to disable reading the device id.
      * This method should be called from your {@link Application#onCreate()} method before creating Branch auto instance by calling {@link Branch#getAutoInstance(Context)}
@@ -1260,6 +1510,8 @@ public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserv
     private void closeSessionInternal() {
         executeClose();
         sessionReferredLink_ = null;
+        // App is going to background. Make sure all queued requests are persisted
+        requestQueue_.flush();
     }
 
     /**
@@ -1442,6 +1694,36 @@ public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserv
         processNextQueueItem();
     }
 
+    @Override
+    public void onNetworkAvailable() {
+        // Drain the requests held while the device was offline
+        if (!hasNetwork_) {
+            hasNetwork_ = true;
+            if (initState_ != SESSION_STATE.UNINITIALISED) {
+                processNextQueueItem();
+            } else if (requestQueue_.getSize() > 0) {
+                // The init failed while offline. Start the session again rather than waiting for the app to do it,
+                // so that the held requests are sent
+                initUserSessionForQueuedRequests();
+            }
+        }
+    }
+
+    /**
+     * @return The monitor of the device connectivity. Lets tests simulate going offline and back online.
+     */
+    BranchNetworkMonitor getNetworkMonitor() {
+        return networkMonitor_;
+    }
+
+    /**
+     * @return True if a request failed for lack of connectivity and the device is still offline. Requests
+     * other than session requests are held in the queue while offline.
+     */
+    private boolean isOffline() {
+        return !hasNetwork_ && !networkMonitor_.isConnected();
+    }
+
     /**
      * Add the given URI Scheme to the external Uri white list. Branch will collect
      * external intent uri only if white list matches with the app opened URL properties
@@ -2002,7 +2284,7 @@ public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserv
             ServerResponse response = null;
             try {
                 int timeOut = prefHelper_.getTimeout() + 2000; // Time out is set to slightly more than link creation time to prevent any edge case
-                response = new getShortLinkTask().execute(req).get(timeOut, TimeUnit.MILLISECONDS);
+                response = new getShortLinkTask().executeTask(req).get(timeOut, TimeUnit.MILLISECONDS);
             } catch (InterruptedException | ExecutionException | TimeoutException ignore) {
             }
             String url = null;
@@ -2048,44 +2330,172 @@ public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserv
         }
     }
 
+    /**
+     * Processes the request queue. Safe to call from any thread and never blocks. If a dispatch pass is already
+     * running, it is asked to make another pass instead, so that no change to the queue is missed.
+     */
     private void processNextQueueItem() {
-        try {
-            serverSema_.acquire();
-            if (networkCount_ == 0 && requestQueue_.getSize() > 0) {
-                networkCount_ = 1;
-                ServerRequest req = requestQueue_.peek();
+        isDispatchPending_.set(true);
+        while (isDispatchPending_.get()) {
+            if (!isDispatching_.compareAndSet(false, true)) {
+                // The dispatching thread sees the pending flag before it stops dispatching
+                return;
+            }
+            try {
+                while (isDispatchPending_.getAndSet(false)) {
+                    dispatchQueuedRequests();
+                }
+            } finally {
+                isDispatching_.set(false);
+            }
+        }
+    }
 
-                serverSema_.release();
-                if (req != null) {
-                    if (!req.isWaitingOnProcessToFinish()) {
-                        // All request except Install request need a valid IdentityID
-                        if (!(req instanceof ServerRequestRegisterInstall) && !hasUser()) {
-                            Log.i("BranchSDK", "Branch Error: User session has not been initialized!");
-                            networkCount_ = 0;
-                            handleFailure(requestQueue_.getSize() - 1, BranchError.ERR_NO_SESSION);
-                        }
-                        //All request except open and install need a session to execute
-                        else if (!(req instanceof ServerRequestInitSession) && (!hasSession() || !hasDeviceFingerPrint())) {
-                            networkCount_ = 0;
-                            handleFailure(requestQueue_.getSize() - 1, BranchError.ERR_NO_SESSION);
-                        } else {
-                            BranchPostTask postTask = new BranchPostTask(req);
-                            postTask.executeTask();
-                        }
-                    } else {
-                        networkCount_ = 0;
+    /**
+     * Makes a single pass over the queue and dispatches every request which can be executed. Should be called
+     * only by the thread which set {@link #isDispatching_}.
+     */
+    private void dispatchQueuedRequests() {
+        List<ServerRequest> dispatches = new ArrayList<>();
+        boolean hasNullRequest = false;
+        boolean failForNoSession = false;
+        try {
+            EnumSet<DispatchLane> blockedLanes = EnumSet.noneOf(DispatchLane.class);
+            // Only session requests are attempted while offline, so that session callbacks are not held
+            if (isOffline()) {
+                blockedLanes.addAll(EnumSet.complementOf(EnumSet.of(DispatchLane.SESSION)));
+            }
+            // Requests are parked while every Branch API host is failing, until a host can be probed again
+            if (!circuitBreaker_.isAvailable()) {
+                blockedLanes.addAll(EnumSet.allOf(DispatchLane.class));
+                scheduleQueueKick(circuitBreaker_.getRetryDelay());
+            }
+            // True once a request ahead of the current one is either in progress or waiting to execute
+            boolean hasPendingAhead = false;
+            // Lanes held by a request waiting for its next retry attempt
+            EnumSet<DispatchLane> backedOffLanes = EnumSet.noneOf(DispatchLane.class);
+            int queueSize = requestQueue_.getSize();
+            for (int i = 0; i < queueSize; i++) {
+                ServerRequest req = requestQueue_.peekAt(i);
+                if (req == null) {
+                    hasNullRequest = true;
+                    continue;
+                }
+                DispatchLane lane = req.getDispatchLane();
+                boolean isBarrier = lane == DispatchLane.SESSION;
+                if (inFlightRequests_.contains(req)) {
+                    if (isBarrier) {
+                        break;
                     }
-                } else {
-                    requestQueue_.remove(null); //In case there is any request nullified remove it.
+                    hasPendingAhead = true;
+                    continue;
                 }
-            } else {
-                serverSema_.release();
+                // Session requests wait for every request ahead and block every request behind them.
+                if (isBarrier && hasPendingAhead) {
+                    break;
+                }
+                long retryDelay = req.getRetryDelay();
+                if (retryDelay > 0) {
+                    scheduleQueueKick(retryDelay);
+                }
+                if (req.isWaitingOnProcessToFinish() || retryDelay > 0 || blockedLanes.contains(lane)
+                        || laneDispatchCount_.get(lane).get() >= getLaneConcurrency(lane)) {
+                    if (isBarrier) {
+                        break;
+                    }
+                    // A request waiting out its retry backoff, and the requests behind it in its lane, let session
+                    // requests pass instead of holding them back for the whole backoff
+                    if (retryDelay > 0 && !req.isWaitingOnProcessToFinish() && !blockedLanes.contains(lane)) {
+                        backedOffLanes.add(lane);
+                    } else if (!backedOffLanes.contains(lane)) {
+                        hasPendingAhead = true;
+                    }
+                    // Keep the order of requests within the lane
+                    blockedLanes.add(lane);
+                    continue;
+                }
+                // All request except Install request need a valid IdentityID
+                if (!(req instanceof ServerRequestRegisterInstall) && !hasUser()) {
+                    Log.i("BranchSDK", "Branch Error: User session has not been initialized!");
+                    failForNoSession = true;
+                    break;
+                }
+                //All request except open and install need a session to execute
+                if (!(req instanceof ServerRequestInitSession) && (!hasSession() || !hasDeviceFingerPrint())) {
+                    failForNoSession = true;
+                    break;
+                }
+
+                inFlightRequests_.add(req);
+                laneDispatchCount_.get(lane).incrementAndGet();
+                dispatches.add(req);
+                if (isBarrier) {
+                    break;
+                }
+                hasPendingAhead = true;
+            }
+
+            for (ServerRequest req : dispatches) {
+                new BranchPostTask(req).executeTask();
+            }
+            if (failForNoSession) {
+                handleFailure(requestQueue_.getSize() - 1, BranchError.ERR_NO_SESSION);
+            }
+            if (hasNullRequest) {
+                requestQueue_.remove(null); //In case there is any request nullified remove it.
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Releases the lane slot held by the given request once its dispatch finished.
+     *
+     * @param request {@link ServerRequest} which was executed
+     */
+    private void onDispatchFinished(ServerRequest request) {
+        inFlightRequests_.remove(request);
+        AtomicInteger dispatchCount = laneDispatchCount_.get(request.getDispatchLane());
+        if (dispatchCount.decrementAndGet() < 0) {
+            dispatchCount.set(0);
+        }
+    }
+
+    /**
+     * Schedules processing of the queue after the given delay, for requests waiting for their next retry attempt.
+     * An earlier scheduled processing is kept.
+     *
+     * @param delay Delay in milliseconds
+     */
+    private void scheduleQueueKick(long delay) {
+        long kickTime = SystemClock.elapsedRealtime() + delay;
+        synchronized (queueKickRunnable_) {
+            if (scheduledQueueKickTime_ > SystemClock.elapsedRealtime() && scheduledQueueKickTime_ <= kickTime) {
+                return;
+            }
+            scheduledQueueKickTime_ = kickTime;
+        }
+        mainHandler_.postDelayed(queueKickRunnable_, delay);
+    }
+
+    private int getLaneConcurrency(DispatchLane lane) {
+        // Session changing requests are always executed one at a time
+        return lane == DispatchLane.SESSION ? 1 : laneConcurrency_.get(lane);
+    }
+
+    /**
+     * @return Position to insert a request at the front of the queue without displacing a request in progress.
+     */
+    private int getFrontInsertIndex() {
+        ServerRequest head = requestQueue_.peek();
+        return head != null && inFlightRequests_.contains(head) ? 1 : 0;
+    }
+
+    private boolean isRequestInFlight(ServerRequest req) {
+        return req != null && inFlightRequests_.contains(req);
+    }
+
     private void handleFailure(int index, int statusCode) {
         ServerRequest req;
         if (index >= requestQueue_.getSize()) {
@@ -2102,30 +2512,6 @@ public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserv
         req.handleFailure(statusCode, "");
     }
 
-    private void updateAllRequestsInQueue() {
-        try {
-            for (int i = 0; i < requestQueue_.getSize(); i++) {
-                ServerRequest req = requestQueue_.peekAt(i);
-                if (req != null) {
-                    JSONObject reqJson = req.getPost();
-                    if (reqJson != null) {
-                        if (reqJson.has(Defines.Jsonkey.SessionID.getKey())) {
-                            req.getPost().put(Defines.Jsonkey.SessionID.getKey(), prefHelper_.getSessionID());
-                        }
-                        if (reqJson.has(Defines.Jsonkey.IdentityID.getKey())) {
-                            req.getPost().put(Defines.Jsonkey.IdentityID.getKey(), prefHelper_.getIdentityID());
-                        }
-                        if (reqJson.has(Defines.Jsonkey.DeviceFingerprintID.getKey())) {
-                            req.getPost().put(Defines.Jsonkey.DeviceFingerprintID.getKey(), prefHelper_.getDeviceFingerPrintID());
-                        }
-                    }
-                }
-            }
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
-    }
-
     private boolean hasSession() {
         return !prefHelper_.getSessionID().equals(PrefHelper.NO_STRING_VALUE);
     }
@@ -2139,11 +2525,7 @@ public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserv
     }
 
     private void insertRequestAtFront(ServerRequest req) {
-        if (networkCount_ == 0) {
-            requestQueue_.insert(req, 0);
-        } else {
-            requestQueue_.insert(req, 1);
-        }
+        requestQueue_.insert(req, getFrontInsertIndex());
     }
 
     private void registerInstallOrOpen(ServerRequest req, BranchReferralInitListener callback) {
@@ -2159,7 +2541,7 @@ public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserv
             if (callback != null) {
                 requestQueue_.setInstallOrOpenCallback(callback);
             }
-            requestQueue_.moveInstallOrOpenToFront(req, networkCount_, callback);
+            requestQueue_.moveInstallOrOpenToFront(req, getFrontInsertIndex(), callback);
         }
 
         processNextQueueItem();
@@ -2292,24 +2674,57 @@ public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserv
                 Log.i(TAG, "Branch is not initialized, cannot close session");
                 return;
             } else {
-                Activity currentActivity = null;
-                if (currentActivityReference_ != null) {
-                    currentActivity = currentActivityReference_.get();
-                }
-                if (customReferrableSettings_ == CUSTOM_REFERRABLE_SETTINGS.USE_DEFAULT) {
-                    initUserSessionInternal((BranchReferralInitListener) null, currentActivity, true);
-                } else {
-                    boolean isReferrable = customReferrableSettings_ == CUSTOM_REFERRABLE_SETTINGS.REFERRABLE;
-                    initUserSessionInternal((BranchReferralInitListener) null, currentActivity, isReferrable);
-                }
+                initUserSessionForQueuedRequests();
             }
         }
 
+        if (coalesceRequest(req)) {
+            return;
+        }
         requestQueue_.enqueue(req);
         req.onRequestQueued();
         processNextQueueItem();
     }
 
+    /**
+     * Starts a session without a callback, so that requests needing a session can be processed.
+     */
+    private void initUserSessionForQueuedRequests() {
+        Activity currentActivity = null;
+        if (currentActivityReference_ != null) {
+            currentActivity = currentActivityReference_.get();
+        }
+        if (customReferrableSettings_ == CUSTOM_REFERRABLE_SETTINGS.USE_DEFAULT) {
+            initUserSessionInternal((BranchReferralInitListener) null, currentActivity, true);
+        } else {
+            boolean isReferrable = customReferrableSettings_ == CUSTOM_REFERRABLE_SETTINGS.REFERRABLE;
+            initUserSessionInternal((BranchReferralInitListener) null, currentActivity, isReferrable);
+        }
+    }
+
+    /**
+     * Merges the request into an identical request already queued within the coalescing window.
+     *
+     * @param req {@link ServerRequest} to be queued
+     * @return True if the request was merged and should not be queued
+     */
+    private boolean coalesceRequest(ServerRequest req) {
+        if (coalescingWindow_ <= 0 || !req.isCoalescible()) {
+            return false;
+        }
+        RequestCoalescingKeyProvider keyProvider = coalescingKeyProvider_;
+        JSONObject post = req.getPost();
+        if (keyProvider != null) {
+            req.coalescingKey_ = keyProvider.getCoalescingKey(req.getRequestPath(), post);
+        } else if (post != null) {
+            req.coalescingKey_ = post.toString();
+        }
+        if (req.coalescingKey_ == null) {
+            return false;
+        }
+        return requestQueue_.coalesce(req, coalescingWindow_, inFlightRequests_);
+    }
+
 
     @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
     private void setActivityLifeCycleObserver(Application application) {
@@ -2591,6 +3006,23 @@ public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserv
         void onLogoutFinished(boolean loggedOut, BranchError error);
     }
 
+    /**
+     * <p>
+     * Interface for defining which queued requests are identical and can be merged.
+     * See {@link #setRequestCoalescing(long, RequestCoalescingKeyProvider)}
+     * </p>
+     */
+    public interface RequestCoalescingKeyProvider {
+        /**
+         * Called for each event or content view request before it is queued.
+         *
+         * @param requestPath A {@link String} with the request path. See {@link Defines.RequestPath}
+         * @param post        A {@link JSONObject} with the request parameters
+         * @return A {@link String} key. Requests with equal keys are merged. Return null to never merge the request.
+         */
+        String getCoalescingKey(String requestPath, JSONObject post);
+    }
+
     /**
      * <p>enum containing the sort options for return of credit history.</p>
      */
@@ -2598,22 +3030,54 @@ public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserv
         kMostRecentFirst, kLeastRecentFirst
     }
 
+    /**
+     * <p>enum containing the lanes in which requests are dispatched to the Branch server. Requests in
+     * different lanes do not wait for each other once a session is available. Requests changing the session
+     * such as init session, identity and logout are in the {@link #SESSION} lane and always execute alone.</p>
+     */
+    public enum DispatchLane {
+        SESSION, LINKS, REWARDS, EVENTS
+    }
+
+    /**
+     * <p>enum containing the policies applied when a request is added to a full request queue.
+     * {@link #DROP_OLDEST} drops the oldest queued request. {@link #DROP_LOWEST_PRIORITY} drops the oldest
+     * request with the lowest priority. {@link #COALESCE} merges the new request into an identical queued
+     * request and drops the lowest priority request otherwise. {@link #SPILL_TO_DISK} moves the lowest priority
+     * request to a disk backed store, from which it is sent once the queue has room.</p>
+     */
+    public enum QueueOverflowPolicy {
+        DROP_OLDEST, DROP_LOWEST_PRIORITY, COALESCE, SPILL_TO_DISK
+    }
+
     /**
      * Async Task to create  a shorlink for synchronous methods
      */
-    private class getShortLinkTask extends AsyncTask<ServerRequest, Void, ServerResponse> {
+    private class getShortLinkTask extends BranchAsyncTask<ServerRequest, Void, ServerResponse> {
+        @Override
+        protected int getTaskPriority() {
+            return BranchExecutor.PRIORITY_INTERACTIVE;
+        }
+
         @Override
         protected ServerResponse doInBackground(ServerRequest... serverRequests) {
             String urlExtend = "v1/url";
-            return branchRemoteInterface_.make_restful_post(serverRequests[0].getPost(), prefHelper_.getAPIBaseUrl() + urlExtend, Defines.RequestPath.GetURL.getPath(), prefHelper_.getBranchKey());
+            String baseUrl = circuitBreaker_.acquireBaseUrl();
+            if (baseUrl == null) {
+                return new ServerResponse(Defines.RequestPath.GetURL.getPath(), BranchError.ERR_BRANCH_UNABLE_TO_REACH_SERVERS);
+            }
+            ServerResponse response = branchRemoteInterface_.make_restful_post(serverRequests[0].getResolvedPost(), baseUrl + urlExtend,
+                    Defines.RequestPath.GetURL.getPath(), prefHelper_.getBranchKey(), serverRequests[0].idempotencyKey_);
+            circuitBreaker_.onResponse(baseUrl, response.getStatusCode());
+            return response;
         }
     }
 
     /**
      * Asynchronous task handling execution of server requests. Execute the network task on background
      * thread and request are  executed in sequential manner. Handles the request execution in
-     * Synchronous-Asynchronous pattern. Should be invoked only form main thread and  the results are
-     * published in the main thread.
+     * Synchronous-Asynchronous pattern. Should be invoked only form main thread. The response is processed
+     * on the background thread and only the results are published in the main thread.
      */
     private class BranchPostTask extends BranchAsyncTask<Void, Void, ServerResponse> {
         ServerRequest thisReq_;
@@ -2622,6 +3086,11 @@ public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserv
             thisReq_ = request;
         }
 
+        @Override
+        protected int getTaskPriority() {
+            return thisReq_.getPriority().ordinal();
+        }
+
         @Override
         protected void onPreExecute() {
             super.onPreExecute();
@@ -2630,160 +3099,279 @@ public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserv
 
         @Override
         protected ServerResponse doInBackground(Void... voids) {
-            if (thisReq_ instanceof ServerRequestInitSession) {
-                ((ServerRequestInitSession) thisReq_).updateLinkReferrerParams();
-            }
-            //Update queue wait time
-            addExtraInstrumentationData(thisReq_.getRequestPath() + "-" + Defines.Jsonkey.Queue_Wait_Time.getKey(), String.valueOf(thisReq_.getQueueWaitTime()));
-
-            //Google ADs ID  and LAT value are updated using reflection. These method need background thread
-            //So updating them for install and open on background thread.
-            if (thisReq_.isGAdsParamsRequired() && !BranchUtil.isTestModeEnabled(context_)) {
-                thisReq_.updateGAdsParams(systemObserver_);
-            }
-
-            if (thisReq_.isGetRequest()) {
-                return branchRemoteInterface_.make_restful_get(thisReq_.getRequestUrl(), thisReq_.getGetParams(), thisReq_.getRequestPath(), prefHelper_.getBranchKey());
-            } else {
-                return branchRemoteInterface_.make_restful_post(thisReq_.getPostWithInstrumentationValues(instrumentationExtraData_), thisReq_.getRequestUrl(), thisReq_.getRequestPath(), prefHelper_.getBranchKey());
+            ServerResponse serverResponse = executeServerRequest(thisReq_);
+            if (serverResponse != null) {
+                processServerResponse(thisReq_, serverResponse);
             }
+            return serverResponse;
         }
 
         @Override
         protected void onPostExecute(ServerResponse serverResponse) {
             super.onPostExecute(serverResponse);
+            onDispatchFinished(thisReq_);
             if (serverResponse != null) {
-                try {
-                    int status = serverResponse.getStatusCode();
-                    hasNetwork_ = true;
+                handleServerResponse(thisReq_, serverResponse);
+                if (hasNetwork_ && initState_ != SESSION_STATE.UNINITIALISED) {
+                    processNextQueueItem();
+                }
+            }
+        }
+    }
 
-                    //If the request is not succeeded
-                    if (status != 200) {
-                        //If failed request is an initialisation request then mark session not initialised
-                        if (thisReq_ instanceof ServerRequestInitSession) {
-                            initState_ = SESSION_STATE.UNINITIALISED;
-                        }
-                        // On a bad request notify with call back and remove the request.
-                        if (status == 409) {
-                            requestQueue_.remove(thisReq_);
-                            if (thisReq_ instanceof ServerRequestCreateUrl) {
-                                ((ServerRequestCreateUrl) thisReq_).handleDuplicateURLError();
-                            } else {
-                                Log.i("BranchSDK", "Branch API Error: Conflicting resource error code from API");
-                                handleFailure(0, status);
-                            }
-                        }
-                        //On Network error or Branch is down fail all the pending requests in the queue except
-                        //for request which need to be replayed on failure.
-                        else {
-                            hasNetwork_ = false;
-                            //Collect all request from the queue which need to be failed.
-                            ArrayList<ServerRequest> requestToFail = new ArrayList<>();
-                            for (int i = 0; i < requestQueue_.getSize(); i++) {
-                                requestToFail.add(requestQueue_.peekAt(i));
-                            }
-                            //Remove the requests from the request queue first
-                            for (ServerRequest req : requestToFail) {
-                                if (req == null || !req.shouldRetryOnFail()) { // Should remove any nullified request object also from queque
-                                    requestQueue_.remove(req);
-                                }
-                            }
-                            // Then, set the network count to zero, indicating that requests can be started again.
-                            networkCount_ = 0;
-
-                            //Finally call the request callback with the error.
-                            for (ServerRequest req : requestToFail) {
-                                if (req != null) {
-                                    req.handleFailure(status, serverResponse.getFailReason());
-                                    //If request need to be replayed, no need for the callbacks
-                                    if (req.shouldRetryOnFail())
-                                        req.clearCallbacks();
-                                }
-                            }
+    /**
+     * Executes the given request against the Branch server. Should be called only from a background thread.
+     *
+     * @param thisReq_ {@link ServerRequest} to execute
+     * @return {@link ServerResponse} for the request
+     */
+    private ServerResponse executeServerRequest(ServerRequest thisReq_) {
+        String baseUrl = circuitBreaker_.acquireBaseUrl();
+        if (baseUrl == null) {
+            // Every host is failing. The request stays parked in the queue without being attempted
+            return new ServerResponse(thisReq_.getRequestPath(), BranchError.ERR_BRANCH_UNABLE_TO_REACH_SERVERS);
+        }
+        if (thisReq_ instanceof ServerRequestInitSession) {
+            ((ServerRequestInitSession) thisReq_).updateLinkReferrerParams();
+        }
+        //Update queue wait time
+        long queueWaitTime = thisReq_.getQueueWaitTime();
+        addExtraInstrumentationData(thisReq_.getRequestPath() + "-" + Defines.Jsonkey.Queue_Wait_Time.getKey(), String.valueOf(queueWaitTime));
+        //Update queue wait time for the priority of the request
+        String priority = thisReq_.getPriority().name().toLowerCase(Locale.US);
+        addExtraInstrumentationData(priority + "-" + Defines.Jsonkey.Queue_Wait_Time.getKey(), String.valueOf(queueWaitTime));
+
+        //Google ADs ID  and LAT value are updated using reflection. These method need background thread
+        //So updating them for install and open on background thread.
+        if (thisReq_.isGAdsParamsRequired() && !BranchUtil.isTestModeEnabled(context_)) {
+            thisReq_.updateGAdsParams(systemObserver_);
+        }
+
+        JSONObject params = thisReq_.isGetRequest() ? thisReq_.getGetParams() : thisReq_.getPostWithInstrumentationValues(instrumentationExtraData_);
+        if (params != null) {
+            try {
+                params.put(BranchRemoteInterface.RETRY_NUMBER, thisReq_.retryAttempts_);
+            } catch (JSONException ignore) {
+            }
+        }
+        ServerResponse response;
+        if (thisReq_.isGetRequest()) {
+            response = branchRemoteInterface_.make_restful_get(thisReq_.getRequestUrl(baseUrl), params, thisReq_.getRequestPath(), prefHelper_.getBranchKey());
+        } else if (isInitSessionHedgingEnabled_ && thisReq_ instanceof ServerRequestInitSession) {
+            response = branchRemoteInterface_.make_hedged_restful_post(params, thisReq_.getRequestUrl(baseUrl), thisReq_.getRequestPath(), prefHelper_.getBranchKey(), thisReq_.idempotencyKey_);
+        } else {
+            response = branchRemoteInterface_.make_restful_post(params, thisReq_.getRequestUrl(baseUrl), thisReq_.getRequestPath(), prefHelper_.getBranchKey(), thisReq_.idempotencyKey_);
+        }
+        circuitBreaker_.onResponse(baseUrl, response.getStatusCode());
+        return response;
+    }
+
+    /**
+     * Processes a successful server response for an executed request. Persists the session and identity
+     * state from the response and lets the request persist its own state. Should be called only from a background thread, before the response is handled on the main thread
+     * by {@link #handleServerResponse(ServerRequest, ServerResponse)}.
+     *
+     * @param thisReq_       {@link ServerRequest} executed
+     * @param serverResponse {@link ServerResponse} for the request
+     */
+    private void processServerResponse(ServerRequest thisReq_, ServerResponse serverResponse) {
+        if (serverResponse.getStatusCode() != HttpURLConnection.HTTP_OK) {
+            return;
+        }
+        try {
+            // If this request changes a session persist the new session values.
+            if (thisReq_ instanceof ServerRequestInitSession
+                    || thisReq_ instanceof ServerRequestIdentifyUserRequest) {
+                // Immediately set session and Identity. Queued requests pick them up when they are sent.
+                JSONObject respJson = serverResponse.getObject();
+                if (respJson != null) {
+                    if (respJson.has(Defines.Jsonkey.SessionID.getKey())) {
+                        prefHelper_.setSessionID(respJson.getString(Defines.Jsonkey.SessionID.getKey()));
+                    }
+                    if (respJson.has(Defines.Jsonkey.IdentityID.getKey())) {
+                        String new_Identity_Id = respJson.getString(Defines.Jsonkey.IdentityID.getKey());
+                        if (!prefHelper_.getIdentityID().equals(new_Identity_Id)) {
+                            //On setting a new identity Id clear the link cache
+                            linkCache_.clear();
+                            prefHelper_.setIdentityID(respJson.getString(Defines.Jsonkey.IdentityID.getKey()));
                         }
                     }
-                    //If the request succeeded
-                    else {
-                        hasNetwork_ = true;
-                        //On create  new url cache the url.
-                        if (thisReq_ instanceof ServerRequestCreateUrl) {
-                            if (serverResponse.getObject() != null) {
-                                final String url = serverResponse.getObject().getString("url");
-                                // cache the link
-                                linkCache_.put(((ServerRequestCreateUrl) thisReq_).getLinkPost(), url);
-                            }
+                    if (respJson.has(Defines.Jsonkey.DeviceFingerprintID.getKey())) {
+                        prefHelper_.setDeviceFingerPrintID(respJson.getString(Defines.Jsonkey.DeviceFingerprintID.getKey()));
+                    }
+                }
+            }
+            thisReq_.onRequestSucceededInBackground(serverResponse, branchReferral_);
+            // Look up the auto deep link activity ahead, so that only launching it is left to the main thread
+            if (thisReq_ instanceof ServerRequestInitSession) {
+                autoDeepLinkActivity_ = resolveAutoDeepLinkActivity();
+            }
+        } catch (JSONException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * @param status Status code of a failed request
+     * @return True if the failure may not happen again, such as a timeout, a server error or a lost connection.
+     * False if the server rejected the request
+     */
+    private static boolean isTransientFailure(int status) {
+        return status >= HttpURLConnection.HTTP_INTERNAL_ERROR || status == BranchError.ERR_BRANCH_REQ_TIMED_OUT
+                || status == BranchError.ERR_BRANCH_NO_CONNECTIVITY;
+    }
+
+    /**
+     * Handles the server response for an executed request. Updates the session state and the queue, and
+     * publishes the result to the request callbacks. The response should already be processed by
+     * {@link #processServerResponse(ServerRequest, ServerResponse)}. Should be called only from the main thread.
+     *
+     * @param thisReq_       {@link ServerRequest} executed
+     * @param serverResponse {@link ServerResponse} for the request
+     */
+    private void handleServerResponse(ServerRequest thisReq_, ServerResponse serverResponse) {
+        try {
+            int status = serverResponse.getStatusCode();
+            hasNetwork_ = true;
+
+            //If the request is not succeeded
+            if (status != 200) {
+                // The request was parked by the circuit breaker without being attempted
+                if (status == BranchError.ERR_BRANCH_UNABLE_TO_REACH_SERVERS) {
+                    scheduleQueueKick(circuitBreaker_.getRetryDelay());
+                    return;
+                }
+                // Retry a transient failure after a backoff while the retry budget of the request allows. The
+                // request waits in the queue, not on a thread. Requests failing while offline are held instead
+                if (isTransientFailure(status) && networkMonitor_.isConnected() && thisReq_.onAttemptFailed()) {
+                    PrefHelper.Debug("BranchSDK", "Retrying " + thisReq_.getRequestPath() + " in " + thisReq_.getRetryDelay() + " ms");
+                    requestQueue_.update(thisReq_);
+                    scheduleQueueKick(thisReq_.getRetryDelay());
+                    return;
+                }
+                //If failed request is an initialisation request then mark session not initialised
+                if (thisReq_ instanceof ServerRequestInitSession) {
+                    initState_ = SESSION_STATE.UNINITIALISED;
+                }
+                // On a bad request notify with call back and remove the request.
+                if (status == 409) {
+                    requestQueue_.remove(thisReq_);
+                    if (thisReq_ instanceof ServerRequestCreateUrl) {
+                        ((ServerRequestCreateUrl) thisReq_).handleDuplicateURLError();
+                    } else {
+                        Log.i("BranchSDK", "Branch API Error: Conflicting resource error code from API");
+                        handleFailure(thisReq_, status);
+                    }
+                }
+                //If the device is offline hold all the requests in the queue. They are sent once back online.
+                else if (!networkMonitor_.isConnected()) {
+                    hasNetwork_ = false;
+                    PrefHelper.Debug("BranchSDK", "Device is offline. Holding queued requests until connectivity returns");
+                    // The init callback gets the failure. The other requests are sent with the next session
+                    if (thisReq_ instanceof ServerRequestInitSession) {
+                        requestQueue_.remove(thisReq_);
+                        thisReq_.handleFailure(status, serverResponse.getFailReason());
+                    }
+                }
+                // A request rejected by the server is failed right away. Retrying it would fail again, and the
+                // rejection says nothing about the other requests
+                else if (!isTransientFailure(status) && !(thisReq_ instanceof ServerRequestInitSession)) {
+                    requestQueue_.remove(thisReq_);
+                    thisReq_.handleFailure(status, serverResponse.getFailReason());
+                }
+                //On Network error or Branch is down, once the retries of the request are used up, fail all the
+                //pending requests in the queue except for request which need to be replayed on failure.
+                else {
+                    hasNetwork_ = false;
+                    // Once the circuit breaker opened, the other requests are parked instead of failed
+                    boolean isParkingQueue = !circuitBreaker_.isAvailable();
+                    //Collect all request from the queue which need to be failed.
+                    ArrayList<ServerRequest> requestToFail = new ArrayList<>();
+                    for (int i = 0; i < requestQueue_.getSize(); i++) {
+                        ServerRequest req = requestQueue_.peekAt(i);
+                        // Requests in progress in other lanes are handled when their own response arrives
+                        if (!isRequestInFlight(req) && (!isParkingQueue || req == thisReq_)) {
+                            requestToFail.add(req);
                         }
-                        //On Logout clear the link cache and all pending requests
-                        else if (thisReq_ instanceof ServerRequestLogout) {
-                            linkCache_.clear();
-                            requestQueue_.clear();
+                    }
+                    if (requestQueue_.remove(thisReq_) && isTransientFailure(status) && thisReq_.shouldRetryOnFail()) {
+                        // Keep the request which exhausted its retry budget for inspection
+                        deadLetterStore_.add(thisReq_, status, serverResponse.getFailReason());
+                    }
+                    if (isParkingQueue) {
+                        scheduleQueueKick(circuitBreaker_.getRetryDelay());
+                    }
+
+                    //Remove the requests from the request queue first
+                    for (ServerRequest req : requestToFail) {
+                        if (req == null || (req != thisReq_ && !req.shouldRetryOnFail())) { // Should remove any nullified request object also from queque
+                            requestQueue_.remove(req);
                         }
-                        requestQueue_.dequeue();
-
-                        // If this request changes a session update the session-id to queued requests.
-                        if (thisReq_ instanceof ServerRequestInitSession
-                                || thisReq_ instanceof ServerRequestIdentifyUserRequest) {
-                            // Immediately set session and Identity and update the pending request with the params
-                            JSONObject respJson = serverResponse.getObject();
-                            if (respJson != null) {
-                                boolean updateRequestsInQueue = false;
-                                if (respJson.has(Defines.Jsonkey.SessionID.getKey())) {
-                                    prefHelper_.setSessionID(respJson.getString(Defines.Jsonkey.SessionID.getKey()));
-                                    updateRequestsInQueue = true;
-                                }
-                                if (respJson.has(Defines.Jsonkey.IdentityID.getKey())) {
-                                    String new_Identity_Id = respJson.getString(Defines.Jsonkey.IdentityID.getKey());
-                                    if (!prefHelper_.getIdentityID().equals(new_Identity_Id)) {
-                                        //On setting a new identity Id clear the link cache
-                                        linkCache_.clear();
-                                        prefHelper_.setIdentityID(respJson.getString(Defines.Jsonkey.IdentityID.getKey()));
-                                        updateRequestsInQueue = true;
-                                    }
-                                }
-                                if (respJson.has(Defines.Jsonkey.DeviceFingerprintID.getKey())) {
-                                    prefHelper_.setDeviceFingerPrintID(respJson.getString(Defines.Jsonkey.DeviceFingerprintID.getKey()));
-                                    updateRequestsInQueue = true;
-                                }
+                    }
 
-                                if (updateRequestsInQueue) {
-                                    updateAllRequestsInQueue();
-                                }
+                    //Finally call the request callback with the error.
+                    for (ServerRequest req : requestToFail) {
+                        if (req != null) {
+                            req.handleFailure(status, serverResponse.getFailReason());
+                            //If request need to be replayed, no need for the callbacks
+                            if (req != thisReq_ && req.shouldRetryOnFail())
+                                req.clearCallbacks();
+                        }
+                    }
+                }
+            }
+            //If the request succeeded
+            else {
+                hasNetwork_ = true;
+                //On create  new url cache the url.
+                if (thisReq_ instanceof ServerRequestCreateUrl) {
+                    if (serverResponse.getObject() != null) {
+                        final String url = serverResponse.getObject().getString("url");
+                        // cache the link
+                        linkCache_.put(((ServerRequestCreateUrl) thisReq_).getLinkPost(), url);
+                    }
+                }
+                //On Logout clear the link cache and all pending requests
+                else if (thisReq_ instanceof ServerRequestLogout) {
+                    linkCache_.clear();
+                    requestQueue_.clear();
+                }
+                requestQueue_.remove(thisReq_);
 
-                                if (thisReq_ instanceof ServerRequestInitSession) {
-                                    initState_ = SESSION_STATE.INITIALISED;
+                // Session and identity are already updated in background. Publish the result.
+                if (thisReq_ instanceof ServerRequestInitSession
+                        || thisReq_ instanceof ServerRequestIdentifyUserRequest) {
+                    JSONObject respJson = serverResponse.getObject();
+                    if (respJson != null) {
+                        if (thisReq_ instanceof ServerRequestInitSession) {
+                            initState_ = SESSION_STATE.INITIALISED;
 
-                                    thisReq_.onRequestSucceeded(serverResponse, branchReferral_);
-                                    // Publish success to listeners
-                                    isInitReportedThroughCallBack = ((ServerRequestInitSession) thisReq_).hasCallBack();
-                                    if (!((ServerRequestInitSession) thisReq_).handleBranchViewIfAvailable((serverResponse))) {
-                                        checkForAutoDeepLinkConfiguration();
-                                    }
-                                    // Count down the latch holding getLatestReferringParamsSync
-                                    if (getLatestReferringParamsLatch != null) {
-                                        getLatestReferringParamsLatch.countDown();
-                                    }
-                                    // Count down the latch holding getFirstReferringParamsSync
-                                    if (getFirstReferringParamsLatch != null) {
-                                        getFirstReferringParamsLatch.countDown();
-                                    }
-                                } else {
-                                    // For setting identity just call only request succeeded
-                                    thisReq_.onRequestSucceeded(serverResponse, branchReferral_);
-                                }
+                            thisReq_.onRequestSucceeded(serverResponse, branchReferral_);
+                            // Publish success to listeners
+                            isInitReportedThroughCallBack = ((ServerRequestInitSession) thisReq_).hasCallBack();
+                            if (!((ServerRequestInitSession) thisReq_).handleBranchViewIfAvailable((serverResponse))) {
+                                checkForAutoDeepLinkConfiguration();
+                            }
+                            // Count down the latch holding getLatestReferringParamsSync
+                            if (getLatestReferringParamsLatch != null) {
+                                getLatestReferringParamsLatch.countDown();
+                            }
+                            // Count down the latch holding getFirstReferringParamsSync
+                            if (getFirstReferringParamsLatch != null) {
+                                getFirstReferringParamsLatch.countDown();
                             }
                         } else {
-                            //Publish success to listeners
+                            // For setting identity just call only request succeeded
                             thisReq_.onRequestSucceeded(serverResponse, branchReferral_);
                         }
                     }
-                    networkCount_ = 0;
-                    if (hasNetwork_ && initState_ != SESSION_STATE.UNINITIALISED) {
-                        processNextQueueItem();
-                    }
-                } catch (JSONException ex) {
-                    ex.printStackTrace();
+                } else {
+                    //Publish success to listeners
+                    thisReq_.onRequestSucceeded(serverResponse, branchReferral_);
                 }
             }
+        } catch (JSONException ex) {
+            ex.printStackTrace();
         }
     }
 
@@ -2806,65 +3394,84 @@ public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserv
         return (activity.getIntent().getStringExtra(AUTO_DEEP_LINKED) != null);
     }
 
-    private void checkForAutoDeepLinkConfiguration() {
+    /**
+     * Finds the activity configured for auto deep linking with the latest referring params. Queries the
+     * {@link PackageManager}, so should be called only from a background thread.
+     *
+     * @return {@link ActivityInfo} of the activity to auto deep link. Null if the session is not from a Branch
+     * link, auto deep linking is disabled or no activity matches the referring params.
+     */
+    private ActivityInfo resolveAutoDeepLinkActivity() {
         JSONObject latestParams = getLatestReferringParams();
-        String deepLinkActivity = null;
-
         try {
             //Check if the application is launched by clicking a Branch link.
             if (!latestParams.has(Defines.Jsonkey.Clicked_Branch_Link.getKey())
                     || !latestParams.getBoolean(Defines.Jsonkey.Clicked_Branch_Link.getKey())) {
-                return;
+                return null;
             }
             if (latestParams.length() > 0) {
                 // Check if auto deep link is disabled.
                 ApplicationInfo appInfo = context_.getPackageManager().getApplicationInfo(context_.getPackageName(), PackageManager.GET_META_DATA);
                 if (appInfo.metaData != null && appInfo.metaData.getBoolean(AUTO_DEEP_LINK_DISABLE, false)) {
-                    return;
+                    return null;
                 }
                 PackageInfo info = context_.getPackageManager().getPackageInfo(context_.getPackageName(), PackageManager.GET_ACTIVITIES | PackageManager.GET_META_DATA);
                 ActivityInfo[] activityInfos = info.activities;
-                int deepLinkActivityReqCode = DEF_AUTO_DEEP_LINK_REQ_CODE;
-
                 if (activityInfos != null) {
                     for (ActivityInfo activityInfo : activityInfos) {
                         if (activityInfo != null && activityInfo.metaData != null && (activityInfo.metaData.getString(AUTO_DEEP_LINK_KEY) != null || activityInfo.metaData.getString(AUTO_DEEP_LINK_PATH) != null)) {
                             if (checkForAutoDeepLinkKeys(latestParams, activityInfo) || checkForAutoDeepLinkPath(latestParams, activityInfo)) {
-                                deepLinkActivity = activityInfo.name;
-                                deepLinkActivityReqCode = activityInfo.metaData.getInt(AUTO_DEEP_LINK_REQ_CODE, DEF_AUTO_DEEP_LINK_REQ_CODE);
-                                break;
+                                return activityInfo;
                             }
                         }
                     }
                 }
-                if (deepLinkActivity != null && currentActivityReference_ != null) {
-                    Activity currentActivity = currentActivityReference_.get();
-                    if (currentActivity != null) {
-                        Intent intent = new Intent(currentActivity, Class.forName(deepLinkActivity));
-                        intent.putExtra(AUTO_DEEP_LINKED, "true");
-
-                        // Put the raw JSON params as extra in case need to get the deep link params as JSON String
-                        intent.putExtra(Defines.Jsonkey.ReferringData.getKey(), latestParams.toString());
-
-                        // Add individual parameters in the data
-                        Iterator<?> keys = latestParams.keys();
-                        while (keys.hasNext()) {
-                            String key = (String) keys.next();
-                            intent.putExtra(key, latestParams.getString(key));
-                        }
-                        currentActivity.startActivityForResult(intent, deepLinkActivityReqCode);
-                    } else {
-                        // This case should not happen. Adding a safe handling for any corner case
-                        Log.w(TAG, "No activity reference to launch deep linked activity");
-                    }
-                }
             }
         } catch (final PackageManager.NameNotFoundException e) {
             Log.i("BranchSDK", "Branch Warning: Please make sure Activity names set for auto deep link are correct!");
+        } catch (Exception ignore) {
+            // Can get TransactionTooLarge Exception here if the Application info exceeds 1mb binder data limit. Usually results with manifest merge from SDKs
+        }
+        return null;
+    }
+
+    /**
+     * Launches the activity found for auto deep linking by {@link #resolveAutoDeepLinkActivity()} when the
+     * session was initialised. Should be called only from the main thread.
+     */
+    private void checkForAutoDeepLinkConfiguration() {
+        ActivityInfo activityInfo = autoDeepLinkActivity_;
+        if (activityInfo == null) {
+            return;
+        }
+        String deepLinkActivity = activityInfo.name;
+        try {
+            if (currentActivityReference_ != null) {
+                Activity currentActivity = currentActivityReference_.get();
+                if (currentActivity != null) {
+                    JSONObject latestParams = getLatestReferringParams();
+                    int deepLinkActivityReqCode = activityInfo.metaData.getInt(AUTO_DEEP_LINK_REQ_CODE, DEF_AUTO_DEEP_LINK_REQ_CODE);
+                    Intent intent = new Intent(currentActivity, Class.forName(deepLinkActivity));
+                    intent.putExtra(AUTO_DEEP_LINKED, "true");
+
+                    // Put the raw JSON params as extra in case need to get the deep link params as JSON String
+                    intent.putExtra(Defines.Jsonkey.ReferringData.getKey(), latestParams.toString());
+
+                    // Add individual parameters in the data
+                    Iterator<?> keys = latestParams.keys();
+                    while (keys.hasNext()) {
+                        String key = (String) keys.next();
+                        intent.putExtra(key, latestParams.getString(key));
+                    }
+                    currentActivity.startActivityForResult(intent, deepLinkActivityReqCode);
+                } else {
+                    // This case should not happen. Adding a safe handling for any corner case
+                    Log.w(TAG, "No activity reference to launch deep linked activity");
+                }
+            }
         } catch (ClassNotFoundException e) {
             Log.i("BranchSDK", "Branch Warning: Please make sure Activity names set for auto deep link are correct! Error while looking for activity " + deepLinkActivity);
         } catch (Exception ignore) {
-            // Can get TransactionTooLarge Exception here if the Application info exceeds 1mb binder data limit. Usually results with manifest merge from SDKs
         }
     }
 
@@ -2931,6 +3538,38 @@ public class Branch implements BranchViewHandler.IBranchViewEvents, SystemObserv
         return isSimulatingInstalls_;
     }
 
+    /**
+     * <p>
+     * Enables connecting to the Branch API while the SDK is constructed, ahead of the first request. This takes the
+     * DNS lookup and the TCP and TLS handshakes off the path of the init request. Call this before
+     * {@link #getAutoInstance(Context)} or {@link #getInstance(Context)}. The time saved is reported in the
+     * instrumentation data as {@code cpt}.
+     * </p>
+     */
+    public static void enableConnectionPrewarm() {
+        isConnectionPrewarmEnabled_ = true;
+    }
+
+    public static void disableConnectionPrewarm() {
+        isConnectionPrewarmEnabled_ = false;
+    }
+
+    /**
+     * <p>
+     * Enables hedging of the install and open requests. When no response arrives within the 95th percentile of
+     * the round trip times measured for the request, a duplicate is sent on another connection and the first
+     * successful response is used. Both requests carry the same idempotency key, so that the server handles the
+     * session once. This cuts the tail latency of session initialisation at the cost of occasional extra requests.
+     * </p>
+     */
+    public static void enableInitSessionHedging() {
+        isInitSessionHedgingEnabled_ = true;
+    }
+
+    public static void disableInitSessionHedging() {
+        isInitSessionHedgingEnabled_ = false;
+    }
+
     public static void enableLogging() {
         isLogging_ = true;
     }
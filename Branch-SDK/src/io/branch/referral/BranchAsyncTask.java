@@ -5,13 +5,13 @@ import android.os.Build;
 
 /**
  * <p>
- * Convenient class for handling ASync task with pool executor depending on the SDK platform
+ * Convenient class for handling ASync task with the SDK executor depending on the SDK platform
  * </p>
  */
 public abstract class BranchAsyncTask<Params, Progress, Result> extends AsyncTask<Params, Progress, Result> {
 
     /**
-     * Execute Params in back ground depending on the platform version. This executes task in parallel with the {@link AsyncTask#THREAD_POOL_EXECUTOR}
+     * Execute Params in back ground depending on the platform version. This executes task in parallel with the {@link BranchExecutor}
      *
      * @param params Params for executing this Async task
      * @return This object for method chaining
@@ -19,11 +19,21 @@ public abstract class BranchAsyncTask<Params, Progress, Result> extends AsyncTas
     public AsyncTask<Params, Progress, Result> executeTask(Params... params) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
             try {
-                return executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, params);
+                return executeOnExecutor(BranchExecutor.getInstance().withPriority(getTaskPriority()), params);
             } catch (Throwable t) {
                 return execute(params);
             }
         } else
             return execute(params);
     }
+
+    /**
+     * Specifies the priority of this task on the {@link BranchExecutor}.
+     *
+     * @return One of {@link BranchExecutor#PRIORITY_INTERACTIVE}, {@link BranchExecutor#PRIORITY_NORMAL} or
+     * {@link BranchExecutor#PRIORITY_BACKGROUND}. Default is {@link BranchExecutor#PRIORITY_NORMAL}.
+     */
+    protected int getTaskPriority() {
+        return BranchExecutor.PRIORITY_NORMAL;
+    }
 }
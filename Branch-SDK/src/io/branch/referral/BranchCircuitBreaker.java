@@ -0,0 +1,183 @@
+package io.branch.referral;
+
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Circuit breaker in front of the Branch API hosts. Every host has a health score, a moving average of the outcomes
+ * of its recent requests, where server errors and timeouts count as failures. Once failures bring the score below
+ * {@link #TRIP_SCORE} the breaker of the host opens, and requests go to the next fallback host. When the breakers of
+ * all hosts are open, requests stay parked in the queue until a breaker half opens and lets a single probe request
+ * through. A successful probe closes the breaker and a failed one opens it again for twice as long.
+ * </p>
+ */
+class BranchCircuitBreaker {
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    // Weight of the outcome of a request in the health score of its host
+    private static final double HEALTH_GAIN = 0.3;
+    // Health score below which the breaker of a host opens. Four consecutive failures of a healthy host reach it
+    private static final double TRIP_SCORE = 0.25;
+    private static final long BASE_OPEN_DURATION = 5 * 1000;
+    private static final long MAX_OPEN_DURATION = 5 * 60 * 1000;
+
+    private final PrefHelper prefHelper_;
+    private final Map<String, HostHealth> hosts_ = new HashMap<>();
+    private List<String> fallbackBaseUrls_ = Collections.emptyList();
+
+    BranchCircuitBreaker(PrefHelper prefHelper) {
+        prefHelper_ = prefHelper;
+    }
+
+    /**
+     * Sets the base urls tried in order when the breaker of the Branch API base url is open.
+     *
+     * @param baseUrls {@link List} of base urls, in the form of {@link PrefHelper#getAPIBaseUrl()}. Null for none.
+     */
+    synchronized void setFallbackBaseUrls(List<String> baseUrls) {
+        List<String> fallbackBaseUrls = new ArrayList<>();
+        if (baseUrls != null) {
+            for (String baseUrl : baseUrls) {
+                if (baseUrl != null && baseUrl.length() > 0) {
+                    fallbackBaseUrls.add(baseUrl.endsWith("/") ? baseUrl : baseUrl + "/");
+                }
+            }
+        }
+        fallbackBaseUrls_ = fallbackBaseUrls;
+    }
+
+    /**
+     * Picks the base url for the next request. The first host with a closed breaker is picked. Otherwise the first
+     * host whose breaker is due to half open is picked for a probe request.
+     *
+     * @return Base url for the request. Null if the request should be parked
+     */
+    synchronized String acquireBaseUrl() {
+        long now = SystemClock.elapsedRealtime();
+        String probeBaseUrl = null;
+        for (String baseUrl : getBaseUrls()) {
+            HostHealth health = getHealth(baseUrl);
+            if (health.state_ == State.CLOSED) {
+                return baseUrl;
+            }
+            if (probeBaseUrl == null && health.state_ == State.OPEN && now >= health.openUntil_) {
+                probeBaseUrl = baseUrl;
+            }
+        }
+        if (probeBaseUrl != null) {
+            hosts_.get(probeBaseUrl).state_ = State.HALF_OPEN;
+            PrefHelper.Debug("BranchSDK", "Probing " + probeBaseUrl);
+        }
+        return probeBaseUrl;
+    }
+
+    /**
+     * @return True if a request would be given a base url by {@link #acquireBaseUrl()}
+     */
+    synchronized boolean isAvailable() {
+        long now = SystemClock.elapsedRealtime();
+        for (String baseUrl : getBaseUrls()) {
+            HostHealth health = getHealth(baseUrl);
+            if (health.state_ == State.CLOSED || (health.state_ == State.OPEN && now >= health.openUntil_)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Time in milliseconds until a breaker half opens. Zero if a host is available
+     */
+    synchronized long getRetryDelay() {
+        long now = SystemClock.elapsedRealtime();
+        long delay = Long.MAX_VALUE;
+        for (String baseUrl : getBaseUrls()) {
+            HostHealth health = getHealth(baseUrl);
+            if (health.state_ == State.CLOSED) {
+                return 0;
+            }
+            if (health.state_ == State.OPEN) {
+                delay = Math.min(delay, Math.max(0, health.openUntil_ - now));
+            }
+        }
+        // Only probes are in flight. Their responses process the queue, so this is merely a fallback
+        return delay == Long.MAX_VALUE ? BASE_OPEN_DURATION : delay;
+    }
+
+    /**
+     * Updates the health of a host with the outcome of a request.
+     *
+     * @param baseUrl    Base url the request was sent to
+     * @param statusCode Status code or {@link BranchError} code of the response
+     */
+    synchronized void onResponse(String baseUrl, int statusCode) {
+        HostHealth health = hosts_.get(baseUrl);
+        if (health == null) {
+            return;
+        }
+        // A device without connectivity tells nothing about the host. Let the next request probe it again
+        if (statusCode == BranchError.ERR_BRANCH_NO_CONNECTIVITY) {
+            if (health.state_ == State.HALF_OPEN) {
+                health.state_ = State.OPEN;
+            }
+            return;
+        }
+        boolean isFailed = statusCode >= 500 || statusCode == BranchError.ERR_BRANCH_REQ_TIMED_OUT;
+        health.healthScore_ = (1 - HEALTH_GAIN) * health.healthScore_ + (isFailed ? 0 : HEALTH_GAIN);
+        if (health.state_ == State.HALF_OPEN) {
+            if (isFailed) {
+                open(baseUrl, health, Math.min(MAX_OPEN_DURATION, health.openDuration_ * 2));
+            } else {
+                health.state_ = State.CLOSED;
+                health.healthScore_ = 1;
+                health.openDuration_ = BASE_OPEN_DURATION;
+                PrefHelper.Debug("BranchSDK", "Circuit closed for " + baseUrl);
+            }
+        } else if (health.state_ == State.CLOSED && isFailed && health.healthScore_ < TRIP_SCORE) {
+            open(baseUrl, health, BASE_OPEN_DURATION);
+        }
+        // Responses arriving while the breaker is open belong to requests sent before it opened and are ignored
+    }
+
+    private void open(String baseUrl, HostHealth health, long duration) {
+        health.state_ = State.OPEN;
+        health.openDuration_ = duration;
+        health.openUntil_ = SystemClock.elapsedRealtime() + duration;
+        PrefHelper.Debug("BranchSDK", "Circuit opened for " + baseUrl + " for " + duration + " ms");
+    }
+
+    private List<String> getBaseUrls() {
+        List<String> baseUrls = new ArrayList<>();
+        baseUrls.add(prefHelper_.getAPIBaseUrl());
+        for (String baseUrl : fallbackBaseUrls_) {
+            if (!baseUrls.contains(baseUrl)) {
+                baseUrls.add(baseUrl);
+            }
+        }
+        return baseUrls;
+    }
+
+    private HostHealth getHealth(String baseUrl) {
+        HostHealth health = hosts_.get(baseUrl);
+        if (health == null) {
+            health = new HostHealth();
+            hosts_.put(baseUrl, health);
+        }
+        return health;
+    }
+
+    private static class HostHealth {
+        State state_ = State.CLOSED;
+        double healthScore_ = 1;
+        long openDuration_ = BASE_OPEN_DURATION;
+        long openUntil_ = 0;
+    }
+}
@@ -0,0 +1,156 @@
+package io.branch.referral;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Scheduler for all background work of the Branch SDK. By default work runs on a small, bounded set of named
+ * background threads owned by the SDK, where tasks are taken in order of priority and then in order of
+ * submission. Apps can inject their own {@link Executor} with {@link Branch#setSdkExecutor(Executor)}, so that
+ * SDK work is budgeted alongside their own.
+ * </p>
+ */
+public class BranchExecutor {
+    /* Work a user is waiting on, such as creating a link */
+    public static final int PRIORITY_INTERACTIVE = 2;
+    /* Default priority */
+    public static final int PRIORITY_NORMAL = 1;
+    /* Work nobody is waiting on, such as analytics and persistence */
+    public static final int PRIORITY_BACKGROUND = 0;
+
+    private static final int THREAD_COUNT = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final long THREAD_KEEP_ALIVE_TIME = 30 * 1000;
+
+    private static BranchExecutor instance_;
+
+    private final ThreadPoolExecutor defaultExecutor_;
+    private volatile Executor executor_;
+    private final Handler timerHandler_;
+    private final AtomicLong sequence_ = new AtomicLong(0);
+
+    public static BranchExecutor getInstance() {
+        if (instance_ == null) {
+            synchronized (BranchExecutor.class) {
+                if (instance_ == null) {
+                    instance_ = new BranchExecutor();
+                }
+            }
+        }
+        return instance_;
+    }
+
+    private BranchExecutor() {
+        defaultExecutor_ = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, THREAD_KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger threadCount_ = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "BranchSDK-worker-" + threadCount_.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        defaultExecutor_.allowCoreThreadTimeOut(true);
+        executor_ = defaultExecutor_;
+        timerHandler_ = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Sets the {@link Executor} running the SDK background work.
+     *
+     * @param executor {@link Executor} to run the SDK work. Null to use the SDK owned threads.
+     */
+    void setExecutor(Executor executor) {
+        executor_ = executor != null ? executor : defaultExecutor_;
+    }
+
+    /**
+     * Runs the task in background with the given priority.
+     *
+     * @param task     {@link Runnable} to run.
+     * @param priority One of {@link #PRIORITY_INTERACTIVE}, {@link #PRIORITY_NORMAL} or {@link #PRIORITY_BACKGROUND}.
+     */
+    public void execute(Runnable task, int priority) {
+        executor_.execute(new PrioritizedTask(task, priority, sequence_.incrementAndGet()));
+    }
+
+    /**
+     * Runs the task in background with the given priority once the delay elapsed. No thread is held while waiting.
+     *
+     * @param task     {@link Runnable} to run.
+     * @param delay    Delay in milliseconds.
+     * @param priority One of {@link #PRIORITY_INTERACTIVE}, {@link #PRIORITY_NORMAL} or {@link #PRIORITY_BACKGROUND}.
+     */
+    public void schedule(final Runnable task, long delay, final int priority) {
+        if (delay <= 0) {
+            execute(task, priority);
+        } else {
+            timerHandler_.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    execute(task, priority);
+                }
+            }, delay);
+        }
+    }
+
+    /**
+     * Returns an {@link Executor} submitting tasks with the given priority, for instance to execute an
+     * {@link android.os.AsyncTask} on the SDK threads.
+     *
+     * @param priority One of {@link #PRIORITY_INTERACTIVE}, {@link #PRIORITY_NORMAL} or {@link #PRIORITY_BACKGROUND}.
+     * @return {@link Executor} for the given priority.
+     */
+    Executor withPriority(final int priority) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                BranchExecutor.this.execute(task, priority);
+            }
+        };
+    }
+
+    /**
+     * Task ordered by priority and then by submission order in the default executor queue.
+     */
+    private static class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        private final Runnable task_;
+        private final int priority_;
+        private final long sequence_;
+
+        PrioritizedTask(Runnable task, int priority, long sequence) {
+            task_ = task;
+            priority_ = priority;
+            sequence_ = sequence;
+        }
+
+        @Override
+        public void run() {
+            task_.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            if (priority_ != other.priority_) {
+                return priority_ > other.priority_ ? -1 : 1;
+            }
+            return sequence_ < other.sequence_ ? -1 : (sequence_ == other.sequence_ ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package io.branch.referral;
+
+import android.Manifest;
+import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * <p>
+ * Monitors the network connectivity of the device. Uses the default network callbacks on Android N and above
+ * and the connectivity change broadcast on older versions. Connectivity changes are published on the main thread.
+ * If the app does not have the {@link Manifest.permission#ACCESS_NETWORK_STATE} permission, the device is always
+ * considered connected.
+ * </p>
+ */
+class BranchNetworkMonitor {
+
+    private final Context context_;
+    private final ConnectivityManager connectivityManager_;
+    private final NetworkStateEvents callback_;
+    private final Handler mainHandler_;
+    private volatile boolean isConnected_ = true;
+    private boolean isStarted_ = false;
+
+    /**
+     * Interface for listening to changes in network connectivity
+     */
+    interface NetworkStateEvents {
+        /**
+         * Called on the main thread when the device gets connected to a network after being disconnected.
+         */
+        void onNetworkAvailable();
+    }
+
+    BranchNetworkMonitor(Context context, NetworkStateEvents callback) {
+        context_ = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        callback_ = callback;
+        mainHandler_ = new Handler(Looper.getMainLooper());
+        ConnectivityManager connectivityManager = null;
+        if (PackageManager.PERMISSION_GRANTED == context_.checkCallingOrSelfPermission(Manifest.permission.ACCESS_NETWORK_STATE)) {
+            connectivityManager = (ConnectivityManager) context_.getSystemService(Context.CONNECTIVITY_SERVICE);
+        }
+        connectivityManager_ = connectivityManager;
+    }
+
+    /**
+     * Starts listening for connectivity changes. Has no effect if already started.
+     */
+    void start() {
+        if (isStarted_ || connectivityManager_ == null) {
+            return;
+        }
+        isStarted_ = true;
+        isConnected_ = readConnectivity();
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                registerNetworkCallback();
+            } else {
+                context_.registerReceiver(new BroadcastReceiver() {
+                    @Override
+                    public void onReceive(Context context, Intent intent) {
+                        onConnectivityChanged(readConnectivity());
+                    }
+                }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+            }
+        } catch (Exception ex) {
+            // Some devices throw security exceptions on registering network callbacks. Consider always connected
+            PrefHelper.Debug("BranchSDK", "Unable to monitor network connectivity " + ex.getMessage());
+            isConnected_ = true;
+        }
+    }
+
+    /**
+     * @return True if the device is connected or connecting to a network.
+     */
+    boolean isConnected() {
+        if (connectivityManager_ == null) {
+            return true;
+        }
+        if (!isStarted_) {
+            return readConnectivity();
+        }
+        return isConnected_;
+    }
+
+    @TargetApi(Build.VERSION_CODES.N)
+    private void registerNetworkCallback() {
+        connectivityManager_.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                onConnectivityChanged(true);
+            }
+
+            @Override
+            public void onLost(Network network) {
+                onConnectivityChanged(readConnectivity());
+            }
+        });
+    }
+
+    private boolean readConnectivity() {
+        try {
+            NetworkInfo networkInfo = connectivityManager_.getActiveNetworkInfo();
+            return networkInfo != null && networkInfo.isConnectedOrConnecting();
+        } catch (Exception ignore) {
+            return true;
+        }
+    }
+
+    /**
+     * Records the connectivity of the device and notifies the callback once it gets connected again.
+     *
+     * @param isConnected True if the device is connected or connecting to a network
+     */
+    void onConnectivityChanged(final boolean isConnected) {
+        boolean wasConnected = isConnected_;
+        isConnected_ = isConnected;
+        if (isConnected && !wasConnected && callback_ != null) {
+            mainHandler_.post(new Runnable() {
+                @Override
+                public void run() {
+                    callback_.onNetworkAvailable();
+                }
+            });
+        }
+    }
+}
@@ -6,7 +6,6 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.graphics.Bitmap;
 import android.graphics.Color;
-import android.os.AsyncTask;
 import android.os.Build;
 import android.text.TextUtils;
 import android.view.View;
@@ -104,7 +103,7 @@ public class BranchViewHandler {
                 // If web view html is not present load the branch view with html obtained from url.
                 else {
                     loadingHtmlInBackGround_ = true;
-                    new loadBranchViewTask(branchView, appContext, callback).execute();
+                    new loadBranchViewTask(branchView, appContext, callback).executeTask();
                 }
                 return true;
             } // If reached maximum limit
@@ -281,7 +280,7 @@ public class BranchViewHandler {
     }
 
 
-    private class loadBranchViewTask extends AsyncTask<Void, Void, Boolean> {
+    private class loadBranchViewTask extends BranchAsyncTask<Void, Void, Boolean> {
         private final BranchView branchView;
         private final Context context;
         private final IBranchViewEvents callback;
@@ -103,6 +103,11 @@ public class Defines {
         Branch_Round_Trip_Time("brtt"),
         Branch_Instrumentation("instrumentation"),
         Queue_Wait_Time("qwt"),
+        Request_Body_Size("rbs"),
+        Compressed_Body_Size("cbs"),
+        Connection_Prewarm_Time("cpt"),
+        Hedge_Delay("hdt"),
+        Event_Count("count"),
         
         BranchViewData("branch_view_data"),
         BranchViewID("id"),
@@ -54,6 +54,8 @@ public class PrefHelper {
     private static final int MAX_RETRIES = 3; // Default retry count is 3
 
     private static final int TIMEOUT = 5500; // Default timeout id 5.5 sec
+    private static final int MIN_TIMEOUT = 1500; // Default lower bound of adaptive timeouts is 1.5 sec
+    private static final int MAX_RESPONSE_SIZE = 1024 * 1024; // Default maximum response size is 1 MB
 
     private static final String SHARED_PREF_FILE = "branch_referral_shared_pref";
 
@@ -85,6 +87,9 @@ public class PrefHelper {
     private static final String KEY_RETRY_COUNT = "bnc_retry_count";
     private static final String KEY_RETRY_INTERVAL = "bnc_retry_interval";
     private static final String KEY_TIMEOUT = "bnc_timeout";
+    private static final String KEY_MIN_TIMEOUT = "bnc_min_timeout";
+    private static final String KEY_COMPRESSION_THRESHOLD = "bnc_compression_threshold";
+    private static final String KEY_MAX_RESPONSE_SIZE = "bnc_max_response_size";
 
     private static final String KEY_LAST_READ_SYSTEM = "bnc_system_read_date";
 
@@ -204,6 +209,26 @@ public class PrefHelper {
         return getInteger(KEY_TIMEOUT, TIMEOUT);
     }
 
+    /**
+     * <p>Sets the lower bound in milliseconds of the timeouts derived from the measured round trip times
+     * of the Branch API endpoints.</p>
+     *
+     * @param minTimeout The {@link Integer} value of the minimum timeout in milliseconds.
+     */
+    public void setMinTimeout(int minTimeout) {
+        setInteger(KEY_MIN_TIMEOUT, minTimeout);
+    }
+
+    /**
+     * <p>Returns the lower bound of the timeouts derived from the measured round trip times of the
+     * Branch API endpoints. The timeout set with {@link #setTimeout(int)} is the upper bound.</p>
+     *
+     * @return An {@link Integer} value containing the minimum timeout in milliseconds.
+     */
+    public int getMinTimeout() {
+        return getInteger(KEY_MIN_TIMEOUT, MIN_TIMEOUT);
+    }
+
     /**
      * <p>Sets the value specifying the number of times that a Branch API call has been re-attempted.</p>
      *
@@ -249,6 +274,44 @@ public class PrefHelper {
         return getInteger(KEY_RETRY_INTERVAL, INTERVAL_RETRY);
     }
 
+    /**
+     * <p>Sets the minimum size in bytes of a request body to be sent gzip compressed.</p>
+     *
+     * @param threshold An {@link Integer} value specifying the minimum body size in bytes for compression.
+     *                  Zero or negative value disables compression.
+     */
+    public void setRequestCompressionThreshold(int threshold) {
+        setInteger(KEY_COMPRESSION_THRESHOLD, threshold);
+    }
+
+    /**
+     * <p>Gets the minimum size in bytes of a request body to be sent gzip compressed.</p>
+     *
+     * @return An {@link Integer} value containing the compression threshold in bytes. Zero or negative
+     * if compression is disabled.
+     */
+    public int getRequestCompressionThreshold() {
+        return getInteger(KEY_COMPRESSION_THRESHOLD, 0);
+    }
+
+    /**
+     * <p>Sets the maximum size in bytes of a response read from the Branch API.</p>
+     *
+     * @param maxSize An {@link Integer} value specifying the maximum response size in bytes.
+     */
+    public void setMaxResponseSize(int maxSize) {
+        setInteger(KEY_MAX_RESPONSE_SIZE, maxSize);
+    }
+
+    /**
+     * <p>Gets the maximum size in bytes of a response read from the Branch API. Larger responses are discarded.</p>
+     *
+     * @return An {@link Integer} value containing the maximum response size in bytes.
+     */
+    public int getMaxResponseSize() {
+        return getInteger(KEY_MAX_RESPONSE_SIZE, MAX_RESPONSE_SIZE);
+    }
+
     /**
      * <p>Sets the value of {@link #KEY_APP_VERSION} in preferences.</p>
      *
@@ -16,6 +16,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
 
@@ -26,12 +27,31 @@ public abstract class ServerRequest {
 
     private static final String POST_KEY = "REQ_POST";
     private static final String POST_PATH_KEY = "REQ_POST_PATH";
+    private static final String RETRY_ATTEMPTS_KEY = "REQ_RETRY_ATTEMPTS";
+    private static final String NEXT_ATTEMPT_TIME_KEY = "REQ_NEXT_ATTEMPT_TIME";
+    private static final String IDEMPOTENCY_KEY_KEY = "REQ_IDEMPOTENCY_KEY";
+
+    // Session scoped fields of the post. They hold placeholders until the request is sent
+    private static final Defines.Jsonkey[] SESSION_FIELDS = {
+            Defines.Jsonkey.SessionID, Defines.Jsonkey.IdentityID, Defines.Jsonkey.DeviceFingerprintID
+    };
+    private static final String SESSION_FIELD_PLACEHOLDER_PREFIX = "$bnc_";
 
     private JSONObject params_;
     protected String requestPath_;
     protected PrefHelper prefHelper_;
     private final SystemObserver systemObserver_;
     long queueWaitTime_ = 0;
+    // Key identifying requests that can be merged with this one. Null if this request is not coalesced
+    String coalescingKey_ = null;
+    // Number of identical requests merged into this request
+    private int coalescedCount_ = 1;
+    // Number of failed attempts to execute this request. Reported as retry number
+    int retryAttempts_ = 0;
+    // Time in milliseconds since epoch before which this request should not be attempted again
+    long nextAttemptTime_ = 0;
+    // Key sent with every attempt of this request, so that the server executes the request only once
+    String idempotencyKey_ = UUID.randomUUID().toString();
     private boolean disableAndroidIDFetch_;
     private int waitLockCnt = 0;
 
@@ -44,6 +64,14 @@ public abstract class ServerRequest {
     // Set for holding any active wait locks
     final Set<PROCESS_WAIT_LOCK> locks_;
 
+    // Priority of the request in the queue in ascending order of urgency
+    enum PRIORITY {
+        BACKGROUND, NORMAL, INTERACTIVE
+    }
+
+    // Time in milliseconds a request waits in the queue to be promoted to the next priority
+    static final long PRIORITY_AGING_INTERVAL = 1000;
+
     /*True if there is an error in creating this request such as error with json parameters.*/
     public boolean constructError_ = false;
 
@@ -73,6 +101,7 @@ public abstract class ServerRequest {
     protected ServerRequest(String requestPath, JSONObject post, Context context) {
         requestPath_ = requestPath;
         params_ = post;
+        bindSessionFields(params_);
         prefHelper_ = PrefHelper.getInstance(context);
         systemObserver_ = new SystemObserver(context);
         disableAndroidIDFetch_ = Branch.isDeviceIDFetchDisabled();
@@ -98,6 +127,17 @@ public abstract class ServerRequest {
      */
     public abstract void onRequestSucceeded(ServerResponse response, Branch branch);
 
+    /**
+     * <p>Called on a background thread when execution of this request to server succeeds, before
+     * {@link #onRequestSucceeded(ServerResponse, Branch)} is called on the main thread. Child class should
+     * update and persist any state from the response here and only deliver callbacks on the main thread.</p>
+     *
+     * @param response A {@link ServerResponse} object containing server response for this request.
+     * @param branch   Current {@link Branch} instance
+     */
+    public void onRequestSucceededInBackground(ServerResponse response, Branch branch) {
+    }
+
     /**
      * <p>Called when there is an error on executing this request. Child class should handle the failure
      * accordingly.</p>
@@ -129,6 +169,104 @@ public abstract class ServerRequest {
         return false;
     }
 
+    /**
+     * Specifies the retry budget and backoff for this request. By default requests which need to be retried on
+     * failure are retried with {@link ServerRequestRetryPolicy#DEFAULT} and others with the retry count and
+     * interval set in {@link PrefHelper}.
+     *
+     * @return {@link ServerRequestRetryPolicy} for this request.
+     */
+    ServerRequestRetryPolicy getRetryPolicy() {
+        if (shouldRetryOnFail()) {
+            return ServerRequestRetryPolicy.DEFAULT;
+        }
+        return ServerRequestRetryPolicy.withRetries(prefHelper_.getRetryCount(), prefHelper_.getRetryInterval());
+    }
+
+    /**
+     * Records a failed attempt to execute this request and schedules the next attempt if the retry budget
+     * allows.
+     *
+     * @return A {@link Boolean} whose value is true if the request should be attempted again, false if the
+     * retry budget is exhausted.
+     */
+    boolean onAttemptFailed() {
+        retryAttempts_++;
+        ServerRequestRetryPolicy retryPolicy = getRetryPolicy();
+        if (retryAttempts_ >= retryPolicy.getMaxAttempts()) {
+            return false;
+        }
+        nextAttemptTime_ = System.currentTimeMillis() + retryPolicy.getBackoffDelay(retryAttempts_);
+        return true;
+    }
+
+    /**
+     * @return Time in milliseconds until this request can be attempted again. Zero if it can be attempted now.
+     */
+    long getRetryDelay() {
+        return Math.max(0, nextAttemptTime_ - System.currentTimeMillis());
+    }
+
+    /**
+     * Specifies the dispatch lane for this request. Requests in different lanes are executed independently of
+     * each other once a session exists. Requests in the {@link Branch.DispatchLane#SESSION} lane are barriers
+     * and are executed only when no other request is in progress.
+     *
+     * @return {@link Branch.DispatchLane} for this request. Default is {@link Branch.DispatchLane#SESSION}.
+     */
+    public Branch.DispatchLane getDispatchLane() {
+        return Branch.DispatchLane.SESSION;
+    }
+
+    /**
+     * Specifies whether identical requests can be merged into this request while queued. Only requests without
+     * a callback are merged, since the callback of a merged request would never be invoked.
+     *
+     * @return A {@link Boolean} whose value is true if this request can be coalesced. Default is false.
+     */
+    boolean isCoalescible() {
+        return false;
+    }
+
+    /**
+     * Merges an identical request into this request by incrementing the event count sent to the server.
+     */
+    void addCoalescedRequest() {
+        coalescedCount_++;
+        try {
+            if (params_ != null) {
+                params_.put(Defines.Jsonkey.Event_Count.getKey(), coalescedCount_);
+            }
+        } catch (JSONException ignore) {
+        }
+    }
+
+    /**
+     * Specifies the priority of this request in the queue. Requests a user is waiting on should be
+     * {@link PRIORITY#INTERACTIVE}, while analytics can be {@link PRIORITY#BACKGROUND}.
+     *
+     * @return {@link PRIORITY} for this request. Default is {@link PRIORITY#NORMAL}.
+     */
+    PRIORITY getPriority() {
+        return PRIORITY.NORMAL;
+    }
+
+    /**
+     * Returns the priority of this request promoted by one level for every {@link #PRIORITY_AGING_INTERVAL}
+     * spent in the queue, so that lower priority requests are not starved by a stream of urgent ones.
+     * Requests restored from a previous session are considered as fully aged.
+     *
+     * @return {@link Integer} rank of the effective priority. Higher value is more urgent.
+     */
+    int getEffectivePriority() {
+        int maxRank = PRIORITY.INTERACTIVE.ordinal();
+        if (queueWaitTime_ <= 0) {
+            return maxRank;
+        }
+        long promotions = getQueueWaitTime() / PRIORITY_AGING_INTERVAL;
+        return (int) Math.min(maxRank, getPriority().ordinal() + promotions);
+    }
+
     /**
      * <p>Provides the path to server for this request.
      * see {@link Defines.RequestPath} <p>
@@ -146,7 +284,18 @@ public abstract class ServerRequest {
      * @return A url for executing this request against the server.
      */
     public String getRequestUrl() {
-        return prefHelper_.getAPIBaseUrl() + requestPath_;
+        return getRequestUrl(prefHelper_.getAPIBaseUrl());
+    }
+
+    /**
+     * <p>Provides the complete url for executing this request against the given API base url, such as a
+     * fallback host. Child class need to extend this method if they need to add specific items to the url</p>
+     *
+     * @param baseUrl The API base url to execute this request against.
+     * @return A url for executing this request against the server.
+     */
+    public String getRequestUrl(String baseUrl) {
+        return baseUrl + requestPath_;
     }
 
     /**
@@ -178,6 +327,7 @@ public abstract class ServerRequest {
             Log.e("BranchSDK", "Could not merge metadata, ignoring user metadata.");
         }
         params_ = post;
+        bindSessionFields(params_);
         DeviceInfo.getInstance(prefHelper_.getExternDebug(), systemObserver_, disableAndroidIDFetch_).updateRequestWithDeviceParams(params_);
     }
 
@@ -192,6 +342,73 @@ public abstract class ServerRequest {
         return params_;
     }
 
+    /**
+     * <p>Gets a copy of the post data with the session scoped fields set to the current session values.
+     * Use this for sending the request, since {@link #getPost()} holds placeholders for these fields.</p>
+     *
+     * @return A {@link JSONObject} containing the post data with the current session values.
+     */
+    JSONObject getResolvedPost() {
+        if (params_ == null) {
+            return null;
+        }
+        try {
+            JSONObject post = new JSONObject(params_.toString());
+            resolveSessionFields(post);
+            return post;
+        } catch (JSONException ignore) {
+            return params_;
+        }
+    }
+
+    /**
+     * Replaces the session scoped fields of the post with placeholders. The placeholders are resolved to the
+     * session values current at the time of sending, so that queued requests need no update when the session
+     * or identity changes.
+     *
+     * @param post {@link JSONObject} post data of the request.
+     */
+    private static void bindSessionFields(JSONObject post) {
+        if (post == null) {
+            return;
+        }
+        try {
+            for (Defines.Jsonkey field : SESSION_FIELDS) {
+                if (post.has(field.getKey())) {
+                    post.put(field.getKey(), SESSION_FIELD_PLACEHOLDER_PREFIX + field.getKey());
+                }
+            }
+        } catch (JSONException ignore) {
+        }
+    }
+
+    /**
+     * Replaces the session field placeholders in the given post with the current session values.
+     *
+     * @param post {@link JSONObject} post data to be sent.
+     */
+    private void resolveSessionFields(JSONObject post) {
+        try {
+            for (Defines.Jsonkey field : SESSION_FIELDS) {
+                if ((SESSION_FIELD_PLACEHOLDER_PREFIX + field.getKey()).equals(post.optString(field.getKey()))) {
+                    post.put(field.getKey(), getSessionFieldValue(field));
+                }
+            }
+        } catch (JSONException ignore) {
+        }
+    }
+
+    private String getSessionFieldValue(Defines.Jsonkey field) {
+        switch (field) {
+            case SessionID:
+                return prefHelper_.getSessionID();
+            case IdentityID:
+                return prefHelper_.getIdentityID();
+            default:
+                return prefHelper_.getDeviceFingerPrintID();
+        }
+    }
+
     /**
      * <p>
      * Specifies whether this request need to be updated with Google Ads Id and LAT value
@@ -224,6 +441,7 @@ public abstract class ServerRequest {
                     String key = keys.next();
                     extendedPost.put(key, originalParams.get(key));
                 }
+                resolveSessionFields(extendedPost);
             }
             // Append instrumentation metadata
             if (instrumentationData.size() > 0) {
@@ -240,7 +458,7 @@ public abstract class ServerRequest {
             }
         } catch (JSONException ignore) {
         } catch (ConcurrentModificationException ex) {
-            extendedPost = params_;
+            extendedPost = getResolvedPost();
         }
         return extendedPost;
     }
@@ -251,7 +469,7 @@ public abstract class ServerRequest {
      * @return A {@link JSONObject} representation of get request parameters.
      */
     public JSONObject getGetParams() {
-        return params_;
+        return getResolvedPost();
     }
 
     /**
@@ -280,6 +498,11 @@ public abstract class ServerRequest {
         try {
             json.put(POST_KEY, params_);
             json.put(POST_PATH_KEY, requestPath_);
+            json.put(IDEMPOTENCY_KEY_KEY, idempotencyKey_);
+            if (retryAttempts_ > 0) {
+                json.put(RETRY_ATTEMPTS_KEY, retryAttempts_);
+                json.put(NEXT_ATTEMPT_TIME_KEY, nextAttemptTime_);
+            }
         } catch (JSONException e) {
             return null;
         }
@@ -316,7 +539,15 @@ public abstract class ServerRequest {
         }
 
         if (requestPath != null && requestPath.length() > 0) {
-            return getExtendedServerRequest(requestPath, post, context);
+            ServerRequest extendedReq = getExtendedServerRequest(requestPath, post, context);
+            if (extendedReq != null) {
+                extendedReq.retryAttempts_ = json.optInt(RETRY_ATTEMPTS_KEY, 0);
+                extendedReq.nextAttemptTime_ = json.optLong(NEXT_ATTEMPT_TIME_KEY, 0);
+                if (json.has(IDEMPOTENCY_KEY_KEY)) {
+                    extendedReq.idempotencyKey_ = json.optString(IDEMPOTENCY_KEY_KEY);
+                }
+            }
+            return extendedReq;
         }
         return null;
     }
@@ -104,6 +104,21 @@ class ServerRequestActionCompleted extends ServerRequest {
         return false;
     }
 
+    @Override
+    public Branch.DispatchLane getDispatchLane() {
+        return Branch.DispatchLane.EVENTS;
+    }
+
+    @Override
+    PRIORITY getPriority() {
+        return PRIORITY.BACKGROUND;
+    }
+
+    @Override
+    boolean isCoalescible() {
+        return callback_ == null;
+    }
+
     @Override
     public void clearCallbacks() {
         //No implementation on purpose
@@ -113,4 +128,9 @@ class ServerRequestActionCompleted extends ServerRequest {
     public boolean shouldRetryOnFail() {
         return true;   //Action completed request need to retry on failure.
     }
+
+    @Override
+    ServerRequestRetryPolicy getRetryPolicy() {
+        return ServerRequestRetryPolicy.EVENTS;
+    }
 }
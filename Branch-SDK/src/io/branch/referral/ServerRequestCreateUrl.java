@@ -179,6 +179,16 @@ class ServerRequestCreateUrl extends ServerRequest {
         return false;
     }
 
+    @Override
+    public Branch.DispatchLane getDispatchLane() {
+        return Branch.DispatchLane.LINKS;
+    }
+
+    @Override
+    PRIORITY getPriority() {
+        return PRIORITY.INTERACTIVE;
+    }
+
     @Override
     public void
     clearCallbacks() {
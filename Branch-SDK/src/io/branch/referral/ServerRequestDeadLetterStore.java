@@ -0,0 +1,80 @@
+package io.branch.referral;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * <p>
+ * Persistent store for requests which exhausted their retry budget. Instead of being dropped, such requests are
+ * kept here with the reason of the last failure so that they can be inspected by the app. Only the most recent
+ * {@link #MAX_ENTRIES} requests are kept.
+ * </p>
+ */
+class ServerRequestDeadLetterStore {
+    private static final String PREF_FILE = "BNC_Dead_Letter_Requests";
+    private static final String PREF_KEY = "BNCDeadLetterRequests";
+    private static final int MAX_ENTRIES = 50;
+
+    static final String KEY_REQUEST_PATH = "request_path";
+    static final String KEY_POST = "post";
+    static final String KEY_ATTEMPTS = "attempts";
+    static final String KEY_STATUS_CODE = "status_code";
+    static final String KEY_FAIL_REASON = "fail_reason";
+    static final String KEY_TIME = "time";
+
+    private final SharedPreferences sharedPref_;
+
+    ServerRequestDeadLetterStore(Context context) {
+        sharedPref_ = context.getSharedPreferences(PREF_FILE, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Adds a request which exhausted its retry budget.
+     *
+     * @param request    The failed {@link ServerRequest}.
+     * @param statusCode Status code of the last attempt.
+     * @param failReason Reason of the last failure.
+     */
+    synchronized void add(ServerRequest request, int statusCode, String failReason) {
+        JSONArray entries = getEntries();
+        try {
+            JSONObject entry = new JSONObject();
+            entry.put(KEY_REQUEST_PATH, request.getRequestPath());
+            entry.put(KEY_POST, request.getResolvedPost());
+            entry.put(KEY_ATTEMPTS, request.retryAttempts_);
+            entry.put(KEY_STATUS_CODE, statusCode);
+            entry.put(KEY_FAIL_REASON, failReason);
+            entry.put(KEY_TIME, System.currentTimeMillis());
+
+            JSONArray updatedEntries = new JSONArray();
+            for (int i = Math.max(0, entries.length() - MAX_ENTRIES + 1); i < entries.length(); i++) {
+                updatedEntries.put(entries.get(i));
+            }
+            updatedEntries.put(entry);
+            sharedPref_.edit().putString(PREF_KEY, updatedEntries.toString()).apply();
+        } catch (JSONException ignore) {
+        }
+    }
+
+    /**
+     * @return A {@link JSONArray} of the dead letter entries, oldest first.
+     */
+    synchronized JSONArray getEntries() {
+        String entries = sharedPref_.getString(PREF_KEY, null);
+        if (entries != null) {
+            try {
+                return new JSONArray(entries);
+            } catch (JSONException ignore) {
+            }
+        }
+        return new JSONArray();
+    }
+
+    synchronized void clear() {
+        sharedPref_.edit().remove(PREF_KEY).apply();
+    }
+}
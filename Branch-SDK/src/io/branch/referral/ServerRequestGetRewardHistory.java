@@ -103,6 +103,11 @@ class ServerRequestGetRewardHistory extends ServerRequest {
         return false;
     }
 
+    @Override
+    public Branch.DispatchLane getDispatchLane() {
+        return Branch.DispatchLane.REWARDS;
+    }
+
     @Override
     public void clearCallbacks() {
         callback_ = null;
@@ -8,6 +8,8 @@ import org.json.JSONObject;
 
 import java.util.Iterator;
 
+import io.branch.referral.network.BranchUrlEncoder;
+
 /**
  * * <p>
  * The server request for retrieving rewards for the current session. Handles request creation and execution.
@@ -16,6 +18,8 @@ import java.util.Iterator;
 class ServerRequestGetRewards extends ServerRequest {
 
     Branch.BranchReferralStateChangedListener callback_;
+    // Set in background when the credit counts from the response differ from the stored ones
+    private boolean isCreditCountChanged_ = false;
 
     /**
      * <p>Create an instance of {@link ServerRequestGetRewards} to retrieve rewards for the current session,
@@ -36,12 +40,12 @@ class ServerRequestGetRewards extends ServerRequest {
     }
 
     @Override
-    public String getRequestUrl() {
-        return super.getRequestUrl() + prefHelper_.getIdentityID();
+    public String getRequestUrl(String baseUrl) {
+        return super.getRequestUrl(baseUrl) + BranchUrlEncoder.encode(prefHelper_.getIdentityID());
     }
 
     @Override
-    public void onRequestSucceeded(ServerResponse resp, Branch branch) {
+    public void onRequestSucceededInBackground(ServerResponse resp, Branch branch) {
         boolean updateListener = false;
         Iterator<?> keys = resp.getObject().keys();
         while (keys.hasNext()) {
@@ -58,8 +62,13 @@ class ServerRequestGetRewards extends ServerRequest {
                 e.printStackTrace();
             }
         }
+        isCreditCountChanged_ = updateListener;
+    }
+
+    @Override
+    public void onRequestSucceeded(ServerResponse resp, Branch branch) {
         if (callback_ != null) {
-            callback_.onStateChanged(updateListener, null);
+            callback_.onStateChanged(isCreditCountChanged_, null);
         }
     }
 
@@ -86,6 +95,11 @@ class ServerRequestGetRewards extends ServerRequest {
         return true;
     }
 
+    @Override
+    public Branch.DispatchLane getDispatchLane() {
+        return Branch.DispatchLane.REWARDS;
+    }
+
     @Override
     public void clearCallbacks() {
         callback_ = null;
@@ -51,7 +51,7 @@ class ServerRequestIdentifyUserRequest extends ServerRequest {
         super(requestPath, post, context);
     }
 
-    public void onRequestSucceeded(ServerResponse resp, Branch branch) {
+    public void onRequestSucceededInBackground(ServerResponse resp, Branch branch) {
         try {
             if (getPost() != null && getPost().has(Defines.Jsonkey.Identity.getKey())) {
                 prefHelper_.setIdentity(getPost().getString(Defines.Jsonkey.Identity.getKey()));
@@ -64,15 +64,18 @@ class ServerRequestIdentifyUserRequest extends ServerRequest {
                 String params = resp.getObject().getString(Defines.Jsonkey.ReferringData.getKey());
                 prefHelper_.setInstallParams(params);
             }
-
-            if (callback_ != null) {
-                callback_.onInitFinished(branch.getFirstReferringParams(), null);
-            }
         } catch (JSONException e) {
             e.printStackTrace();
         }
     }
 
+    @Override
+    public void onRequestSucceeded(ServerResponse resp, Branch branch) {
+        if (callback_ != null) {
+            callback_.onInitFinished(branch.getFirstReferringParams(), null);
+        }
+    }
+
     @Override
     public void handleFailure(int statusCode, String causeMsg) {
         if (callback_ != null) {
@@ -87,8 +87,7 @@ abstract class ServerRequestInitSession extends ServerRequest {
     }
     
     @Override
-    
-    public void onRequestSucceeded(ServerResponse response, Branch branch) {
+    public void onRequestSucceededInBackground(ServerResponse response, Branch branch) {
         // Check for any Third party SDK for data handling
         try {
             prefHelper_.setLinkClickIdentifier(PrefHelper.NO_STRING_VALUE);
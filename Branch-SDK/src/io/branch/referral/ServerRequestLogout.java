@@ -47,7 +47,7 @@ class ServerRequestLogout extends ServerRequest {
     }
 
     @Override
-    public void onRequestSucceeded(ServerResponse resp, Branch branch) {
+    public void onRequestSucceededInBackground(ServerResponse resp, Branch branch) {
         try {
             prefHelper_.setSessionID(resp.getObject().getString(Defines.Jsonkey.SessionID.getKey()));
             prefHelper_.setIdentityID(resp.getObject().getString(Defines.Jsonkey.IdentityID.getKey()));
@@ -59,10 +59,13 @@ class ServerRequestLogout extends ServerRequest {
             prefHelper_.clearUserValues();
         } catch (JSONException e) {
             e.printStackTrace();
-        } finally {
-            if (callback_ != null) {
-                callback_.onLogoutFinished(true, null);
-            }
+        }
+    }
+
+    @Override
+    public void onRequestSucceeded(ServerResponse resp, Branch branch) {
+        if (callback_ != null) {
+            callback_.onLogoutFinished(true, null);
         }
     }
 
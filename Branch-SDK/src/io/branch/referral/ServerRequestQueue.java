@@ -8,12 +8,11 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.Collections;
-import java.util.ConcurrentModificationException;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>The Branch SDK can queue up requests whilst it is waiting for initialization of a session to
@@ -22,11 +21,22 @@ import java.util.NoSuchElementException;
  */
 class ServerRequestQueue {
     private static final String PREF_KEY = "BNCServerRequestQueue";
-    private static final int MAX_ITEMS = 25;
+    // Default maximum number of requests held in the queue
+    static final int MAX_ITEMS = 25;
     private static ServerRequestQueue SharedInstance;
     private SharedPreferences sharedPref;
     private SharedPreferences.Editor editor;
-    private final List<ServerRequest> queue;
+    private final ServerRequestQueueBuffer queue;
+    private final ServerRequestQueueJournal journal_;
+    private final ServerRequestQueueJournal.SnapshotSource snapshotSource_;
+    private final ServerRequestQueuePersister persister_;
+    private final Context context_;
+    private volatile int capacity_ = MAX_ITEMS;
+    private volatile Branch.QueueOverflowPolicy overflowPolicy_ = Branch.QueueOverflowPolicy.DROP_OLDEST;
+    // Created on first spill or if requests were spilled in a previous session. Guarded by queue
+    private ServerRequestQueueOverflowStore overflowStore_;
+    private final AtomicInteger droppedRequestCount_ = new AtomicInteger(0);
+    private final AtomicInteger spilledRequestCount_ = new AtomicInteger(0);
 
     /**
      * <p>Singleton method to return the pre-initialised, or newly initialise and return, a singleton
@@ -58,62 +68,150 @@ class ServerRequestQueue {
     private ServerRequestQueue(Context c) {
         sharedPref = c.getSharedPreferences("BNC_Server_Request_Queue", Context.MODE_PRIVATE);
         editor = sharedPref.edit();
+        journal_ = new ServerRequestQueueJournal(c);
+        snapshotSource_ = new ServerRequestQueueJournal.SnapshotSource() {
+            @Override
+            public List<JSONObject> takeSnapshot() {
+                List<JSONObject> snapshot = new ArrayList<>();
+                synchronized (queue) {
+                    for (ServerRequest req : queue) {
+                        snapshot.add(req == null ? null : req.toJSON());
+                    }
+                    journal_.discardPending();
+                }
+                return snapshot;
+            }
+        };
+        persister_ = new ServerRequestQueuePersister(journal_, snapshotSource_);
+        context_ = c.getApplicationContext() != null ? c.getApplicationContext() : c;
+        if (ServerRequestQueueOverflowStore.exists(context_)) {
+            overflowStore_ = new ServerRequestQueueOverflowStore(context_);
+        }
         queue = retrieve(c);
+        if (overflowStore_ != null) {
+            refillFromOverflowStore();
+        }
     }
 
     private void persist() {
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                synchronized (queue) {
-                    JSONArray jsonArr = new JSONArray();
-                    for (ServerRequest aQueue : queue) {
-                        JSONObject json = aQueue.toJSON();
-                        if (json != null) {
-                            jsonArr.put(json);
-                        }
-                    }
-                    boolean succeeded = false;
-                    try {
-                        editor.putString(PREF_KEY, jsonArr.toString()).commit();
-                        succeeded = true;
-                    } catch (ConcurrentModificationException ex) {
-                        PrefHelper.Debug("Persisting Queue: ", "Failed to persit queue " + ex.getMessage());
-                    } finally {
-                        if (!succeeded) {
-                            try {
-                                editor.putString(PREF_KEY, jsonArr.toString()).commit();
-                            } catch (ConcurrentModificationException ignored) {
-                            }
-                        }
-                    }
+        persister_.markDirty();
+    }
+
+    /**
+     * <p>Writes any queue changes not yet persisted without waiting for the persistence debounce window.
+     * Should be called when the app goes to background or the session is closed.</p>
+     */
+    public void flush() {
+        persister_.flush();
+        synchronized (queue) {
+            if (overflowStore_ != null) {
+                overflowStore_.flush();
+            }
+        }
+    }
 
+    /**
+     * <p>Sets the maximum number of requests held in the queue and the policy applied when a request is
+     * added to a full queue.</p>
+     *
+     * @param capacity       An {@link Integer} specifying the maximum number of queued requests.
+     * @param overflowPolicy The {@link Branch.QueueOverflowPolicy} applied on overflow.
+     */
+    public void setCapacity(int capacity, Branch.QueueOverflowPolicy overflowPolicy) {
+        capacity_ = capacity;
+        overflowPolicy_ = overflowPolicy;
+        refillFromOverflowStore();
+    }
+
+    /**
+     * @return Number of requests dropped from a full queue since the app started.
+     */
+    public int getDroppedRequestCount() {
+        return droppedRequestCount_.get();
+    }
+
+    /**
+     * @return Number of requests spilled from a full queue to the disk backed overflow store since the app started.
+     */
+    public int getSpilledRequestCount() {
+        return spilledRequestCount_.get();
+    }
+
+    /**
+     * <p>Sets the time to wait for further queue changes before persisting the queue. Changes
+     * within this window are written together.</p>
+     *
+     * @param debounceWindow A {@link Long} value specifying the window in milliseconds.
+     */
+    public void setPersistenceDebounceWindow(long debounceWindow) {
+        persister_.setDebounceWindow(debounceWindow);
+    }
+
+    private ServerRequestQueueBuffer retrieve(Context context) {
+        ServerRequestQueueBuffer result = new ServerRequestQueueBuffer();
+        List<JSONObject> storedRequests;
+        boolean migrated = false;
+        if (journal_.exists()) {
+            storedRequests = journal_.replay();
+        } else {
+            // Migrate the queue persisted by older SDK versions in shared preference
+            storedRequests = new ArrayList<>();
+            String jsonStr = sharedPref.getString(PREF_KEY, null);
+            if (jsonStr != null) {
+                try {
+                    JSONArray jsonArr = new JSONArray(jsonStr);
+                    for (int i = 0; i < jsonArr.length(); i++) {
+                        storedRequests.add(jsonArr.getJSONObject(i));
+                    }
+                } catch (JSONException ignored) {
                 }
+                migrated = true;
             }
-        }).start();
-    }
-
-    private List<ServerRequest> retrieve(Context context) {
-        List<ServerRequest> result = Collections.synchronizedList(new LinkedList<ServerRequest>());
-        String jsonStr = sharedPref.getString(PREF_KEY, null);
-
-        if (jsonStr != null) {
-            try {
-                JSONArray jsonArr = new JSONArray(jsonStr);
-                for (int i = 0; i < Math.min(jsonArr.length(), MAX_ITEMS); i++) {
-                    JSONObject json = jsonArr.getJSONObject(i);
-                    ServerRequest req = ServerRequest.fromJSON(json, context);
-                    if (req != null) {
-                        // No need to retrieve close or logout from previous session
-                        if (!(req instanceof ServerRequestRegisterClose || req instanceof ServerRequestLogout)) {
+        }
+
+        for (int i = 0; i < storedRequests.size(); i++) {
+            JSONObject json = storedRequests.get(i);
+            if (json != null) {
+                ServerRequest req = ServerRequest.fromJSON(json, context);
+                if (req != null) {
+                    // No need to retrieve close or logout from previous session
+                    if (!(req instanceof ServerRequestRegisterClose || req instanceof ServerRequestLogout)) {
+                        if (result.size() < capacity_) {
                             result.add(req);
+                        } else {
+                            // Requests beyond the capacity, such as those queued with a larger capacity configured
+                            // later in the previous session, wait in the overflow store until the queue has room
+                            if (overflowStore_ == null) {
+                                overflowStore_ = new ServerRequestQueueOverflowStore(context_);
+                            }
+                            overflowStore_.push(json);
                         }
                     }
                 }
-            } catch (JSONException ignored) {
             }
         }
 
+        // Write the requests moved to the overflow store before they are removed from the queue journal
+        if (overflowStore_ != null) {
+            overflowStore_.flush();
+        }
+        // Rewrite the journal if the loaded queue differs from the stored one, so that indices of the new records match the queue
+        if (migrated || journal_.hasCorruptedTail() || result.size() != storedRequests.size()) {
+            final ServerRequestQueueBuffer loadedQueue = result;
+            journal_.compact(new ServerRequestQueueJournal.SnapshotSource() {
+                @Override
+                public List<JSONObject> takeSnapshot() {
+                    List<JSONObject> snapshot = new ArrayList<>();
+                    for (ServerRequest req : loadedQueue) {
+                        snapshot.add(req.toJSON());
+                    }
+                    return snapshot;
+                }
+            });
+        }
+        if (migrated) {
+            editor.remove(PREF_KEY).apply();
+        }
         return result;
     }
 
@@ -121,28 +219,167 @@ class ServerRequestQueue {
      * <p>Gets the number of {@link ServerRequest} objects currently queued up for submission to
      * the Branch API.</p>
      *
-     * @return An {@link Integer} value indicating the current size of the {@link List} object
+     * @return An {@link Integer} value indicating the current size of the {@link ServerRequestQueueBuffer}
      * that forms the logical queue for the class.
      */
     public int getSize() {
-        return queue.size();
+        synchronized (queue) {
+            return queue.size();
+        }
     }
 
     /**
-     * <p>Adds a {@link ServerRequest} object to the queue.</p>
+     * <p>Adds a {@link ServerRequest} object to the queue. The request is placed ahead of queued requests with a
+     * lower effective priority, but never ahead of the head of the queue or a session request.</p>
      *
      * @param request The {@link ServerRequest} object to add to the queue.
      */
     public void enqueue(ServerRequest request) {
         if (request != null) {
-            queue.add(request);
-            if (getSize() >= MAX_ITEMS) {
-                queue.remove(1);
+            synchronized (queue) {
+                int index = getPriorityInsertIndex(request);
+                queue.add(index, request);
+                journal_.logAdd(index, request.toJSON());
+                if (queue.size() > capacity_) {
+                    handleOverflow(request);
+                }
             }
             persist();
         }
     }
 
+    /**
+     * Finds the position for a new request. The request moves ahead of queued requests whose effective priority
+     * is lower than its own. The head of the queue, which may be in progress, and session requests, which are
+     * dispatch barriers, are never overtaken. Should be called with the queue locked.
+     *
+     * @param request The {@link ServerRequest} to be added.
+     * @return Position in the queue to insert the request.
+     */
+    private int getPriorityInsertIndex(ServerRequest request) {
+        int priority = request.getPriority().ordinal();
+        int index = queue.size();
+        while (index > 1) {
+            ServerRequest prev = queue.get(index - 1);
+            if (prev == null || prev.getDispatchLane() == Branch.DispatchLane.SESSION
+                    || prev.getEffectivePriority() >= priority) {
+                break;
+            }
+            index--;
+        }
+        return index;
+    }
+
+    /**
+     * Makes room in a full queue according to the overflow policy. Should be called with the queue locked.
+     *
+     * @param request The {@link ServerRequest} just added to the queue.
+     */
+    private void handleOverflow(ServerRequest request) {
+        Branch.QueueOverflowPolicy policy = overflowPolicy_;
+        if (policy == Branch.QueueOverflowPolicy.COALESCE && coalesceOnOverflow(request)) {
+            return;
+        }
+        // Legacy behaviour drops the oldest request behind the head of the queue, which may be in progress
+        int victimIndex = policy == Branch.QueueOverflowPolicy.DROP_OLDEST ? 1 : getLowestPriorityIndex();
+        if (victimIndex < 1 || victimIndex >= queue.size()) {
+            return;
+        }
+        ServerRequest victim = queue.remove(victimIndex);
+        journal_.logRemove(victimIndex);
+        if (policy == Branch.QueueOverflowPolicy.SPILL_TO_DISK && victim != null) {
+            if (overflowStore_ == null) {
+                overflowStore_ = new ServerRequestQueueOverflowStore(context_);
+            }
+            overflowStore_.push(victim.toJSON());
+            spilledRequestCount_.incrementAndGet();
+        } else {
+            droppedRequestCount_.incrementAndGet();
+            PrefHelper.Debug("BranchSDK", "Request queue is full. Dropped request " + (victim == null ? null : victim.getRequestPath()));
+        }
+    }
+
+    /**
+     * Finds the request to evict from a full queue. Picks the oldest request with the lowest effective priority,
+     * never the head of the queue nor a session request. Should be called with the queue locked.
+     *
+     * @return Position of the request to evict. -1 if there is no request which can be evicted.
+     */
+    private int getLowestPriorityIndex() {
+        int victimIndex = -1;
+        int lowestPriority = Integer.MAX_VALUE;
+        for (int i = 1; i < queue.size(); i++) {
+            ServerRequest req = queue.get(i);
+            if (req == null) {
+                return i;
+            }
+            if (req.getDispatchLane() != Branch.DispatchLane.SESSION && req.getEffectivePriority() < lowestPriority) {
+                lowestPriority = req.getEffectivePriority();
+                victimIndex = i;
+            }
+        }
+        return victimIndex;
+    }
+
+    /**
+     * Merges the request just added to a full queue into an identical queued request, ie one with the same path
+     * and parameters. Should be called with the queue locked.
+     *
+     * @param request The {@link ServerRequest} just added to the queue.
+     * @return True if the request was merged and removed from the queue.
+     */
+    private boolean coalesceOnOverflow(ServerRequest request) {
+        if (!request.isCoalescible() || request.getPost() == null) {
+            return false;
+        }
+        String key = request.getPost().toString();
+        for (ServerRequest req : queue.getRequestsWithPath(request.getRequestPath())) {
+            if (req != request && req.getPost() != null && queue.indexOf(req) > 0) {
+                // Compare parameters without the count of requests already merged into the queued request
+                boolean isIdentical = false;
+                try {
+                    JSONObject post = new JSONObject(req.getPost().toString());
+                    post.remove(Defines.Jsonkey.Event_Count.getKey());
+                    isIdentical = key.equals(post.toString());
+                } catch (JSONException ignore) {
+                }
+                if (isIdentical) {
+                    int requestIndex = queue.indexOf(request);
+                    queue.remove(requestIndex);
+                    journal_.logRemove(requestIndex);
+                    req.addCoalescedRequest();
+                    logUpdate(queue.indexOf(req), req);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves spilled requests back to the queue while it has room.
+     */
+    private void refillFromOverflowStore() {
+        boolean isRefilled = false;
+        synchronized (queue) {
+            if (overflowStore_ == null) {
+                return;
+            }
+            while (queue.size() < capacity_ && overflowStore_.size() > 0) {
+                JSONObject json = overflowStore_.poll();
+                ServerRequest req = json == null ? null : ServerRequest.fromJSON(json, context_);
+                if (req != null) {
+                    queue.add(req);
+                    journal_.logAdd(queue.size() - 1, json);
+                    isRefilled = true;
+                }
+            }
+        }
+        if (isRefilled) {
+            persist();
+        }
+    }
+
     /**
      * <p>Removes the queued {@link ServerRequest} object at position with index 0 within the queue,
      * and returns it as a result.</p>
@@ -152,9 +389,13 @@ class ServerRequestQueue {
     public ServerRequest dequeue() {
         ServerRequest req = null;
         try {
-            req = queue.remove(0);
+            synchronized (queue) {
+                req = queue.remove(0);
+                journal_.logRemove(0);
+            }
             persist();
-        } catch (IndexOutOfBoundsException | NoSuchElementException ignored) {
+            refillFromOverflowStore();
+        } catch (IndexOutOfBoundsException ignored) {
         }
         return req;
     }
@@ -167,9 +408,10 @@ class ServerRequestQueue {
      */
     public ServerRequest peek() {
         ServerRequest req = null;
-        try {
-            req = queue.get(0);
-        } catch (IndexOutOfBoundsException | NoSuchElementException ignored) {
+        synchronized (queue) {
+            if (queue.size() > 0) {
+                req = queue.get(0);
+            }
         }
         return req;
     }
@@ -186,13 +428,69 @@ class ServerRequestQueue {
      */
     public ServerRequest peekAt(int index) {
         ServerRequest req = null;
-        try {
-            req = queue.get(index);
-        } catch (IndexOutOfBoundsException | NoSuchElementException ignored) {
+        synchronized (queue) {
+            if (index >= 0 && index < queue.size()) {
+                req = queue.get(index);
+            }
         }
         return req;
     }
 
+    /**
+     * <p>Merges the given request into an identical request queued within the coalescing window. Requests
+     * are identical if they have the same request path and coalescing key.</p>
+     *
+     * @param request  The {@link ServerRequest} to merge. Its coalescing key should be set.
+     * @param window   Maximum time in milliseconds the identical request may have been queued.
+     * @param excluded A {@link Set} of queued {@link ServerRequest} which should not be merged into, such as
+     *                 requests in progress.
+     * @return True if the request was merged and should not be queued.
+     */
+    boolean coalesce(ServerRequest request, long window, Set<ServerRequest> excluded) {
+        boolean isMerged = false;
+        synchronized (queue) {
+            for (ServerRequest req : queue.getRequestsWithPath(request.getRequestPath())) {
+                if (!excluded.contains(req) && request.coalescingKey_.equals(req.coalescingKey_)
+                        && req.queueWaitTime_ > 0 && req.getQueueWaitTime() <= window) {
+                    req.addCoalescedRequest();
+                    // Re-journal the merged request with the updated count
+                    logUpdate(queue.indexOf(req), req);
+                    isMerged = true;
+                    break;
+                }
+            }
+        }
+        if (isMerged) {
+            persist();
+        }
+        return isMerged;
+    }
+
+    /**
+     * <p>Persists the updated state of a queued request, such as its retry attempts.</p>
+     *
+     * @param request The queued {@link ServerRequest} which changed.
+     */
+    public void update(ServerRequest request) {
+        boolean isUpdated = false;
+        synchronized (queue) {
+            int index = queue.indexOf(request);
+            if (index >= 0) {
+                logUpdate(index, request);
+                isUpdated = true;
+            }
+        }
+        if (isUpdated) {
+            persist();
+        }
+    }
+
+    // Re-journals the request at the given index. Should be called with the queue locked
+    private void logUpdate(int index, ServerRequest request) {
+        journal_.logRemove(index);
+        journal_.logAdd(index, request.toJSON());
+    }
+
     /**
      * <p>As the method name implies, inserts a {@link ServerRequest} into the queue at the index
      * position specified.</p>
@@ -204,10 +502,13 @@ class ServerRequestQueue {
      */
     public void insert(ServerRequest request, int index) {
         try {
-            if (queue.size() < index) {
-                index = queue.size();
+            synchronized (queue) {
+                if (queue.size() < index) {
+                    index = queue.size();
+                }
+                queue.add(index, request);
+                journal_.logAdd(index, request == null ? null : request.toJSON());
             }
-            queue.add(index, request);
             persist();
         } catch (IndexOutOfBoundsException ignored) {
         }
@@ -225,8 +526,12 @@ class ServerRequestQueue {
     public ServerRequest removeAt(int index) {
         ServerRequest req = null;
         try {
-            req = queue.remove(index);
+            synchronized (queue) {
+                req = queue.remove(index);
+                journal_.logRemove(index);
+            }
             persist();
+            refillFromOverflowStore();
         } catch (IndexOutOfBoundsException ignored) {
         }
         return req;
@@ -241,10 +546,17 @@ class ServerRequestQueue {
      */
     public boolean remove(ServerRequest request) {
         boolean isRemoved = false;
-        try {
-            isRemoved = queue.remove(request);
+        synchronized (queue) {
+            int index = queue.indexOf(request);
+            if (index >= 0) {
+                queue.remove(index);
+                journal_.logRemove(index);
+                isRemoved = true;
+            }
+        }
+        if (isRemoved) {
             persist();
-        } catch (UnsupportedOperationException ignored) {
+            refillFromOverflowStore();
         }
         return isRemoved;
     }
@@ -253,11 +565,14 @@ class ServerRequestQueue {
      * <p> Clears all pending requests in the queue </p>
      */
     public void clear() {
-        try {
+        synchronized (queue) {
             queue.clear();
-            persist();
-        } catch (UnsupportedOperationException ignored) {
+            journal_.logClear();
+            if (overflowStore_ != null) {
+                overflowStore_.clear();
+            }
         }
+        persist();
     }
 
     /**
@@ -269,14 +584,8 @@ class ServerRequestQueue {
      */
     public boolean containsClose() {
         synchronized (queue) {
-            for (ServerRequest req : queue) {
-                if (req != null &&
-                        req.getRequestPath().equals(Defines.RequestPath.RegisterClose.getPath())) {
-                    return true;
-                }
-            }
+            return queue.containsPath(Defines.RequestPath.RegisterClose.getPath());
         }
-        return false;
     }
 
     /**
@@ -288,14 +597,9 @@ class ServerRequestQueue {
      */
     public boolean containsInstallOrOpen() {
         synchronized (queue) {
-            for (ServerRequest req : queue) {
-                if (req != null &&
-                        ((req instanceof ServerRequestRegisterInstall) || req instanceof ServerRequestRegisterOpen)) {
-                    return true;
-                }
-            }
+            return queue.containsPath(Defines.RequestPath.RegisterInstall.getPath())
+                    || queue.containsPath(Defines.RequestPath.RegisterOpen.getPath());
         }
-        return false;
     }
 
     /**
@@ -310,15 +614,13 @@ class ServerRequestQueue {
     public void moveInstallOrOpenToFront(ServerRequest request, int networkCount, Branch.BranchReferralInitListener callback) {
 
         synchronized (queue) {
-            Iterator<ServerRequest> iter = queue.iterator();
-            while (iter.hasNext()) {
-                ServerRequest req = iter.next();
-                if (req != null && (req instanceof ServerRequestRegisterInstall || req instanceof ServerRequestRegisterOpen)) {
-                    //Remove all install or open in queue. Since this method is called each time on Install/open there will be only one
-                    //instance of open/Install in queue. So we can break as we see the first open/install
-                    iter.remove();
-                    break;
-                }
+            //Remove all install or open in queue. Since this method is called each time on Install/open there will be only one
+            //instance of open/Install in queue.
+            ServerRequest existingReq = getInstallOrOpen();
+            if (existingReq != null) {
+                int index = queue.indexOf(existingReq);
+                queue.remove(index);
+                journal_.logRemove(index);
             }
         }
 
@@ -336,17 +638,15 @@ class ServerRequestQueue {
      */
     public void setInstallOrOpenCallback(Branch.BranchReferralInitListener callback) {
         synchronized (queue) {
-            Iterator<ServerRequest> iter = queue.iterator();
-            while (iter.hasNext()) {
-                ServerRequest req = iter.next();
-                if (req != null) {
-                    if (req instanceof ServerRequestRegisterInstall) {
-                        ((ServerRequestRegisterInstall) req).setInitFinishedCallback(callback);
-                    } else if (req instanceof ServerRequestRegisterOpen) {
-                        ((ServerRequestRegisterOpen) req).setInitFinishedCallback(callback);
-                    }
+            for (ServerRequest req : queue.getRequestsWithPath(Defines.RequestPath.RegisterInstall.getPath())) {
+                if (req instanceof ServerRequestRegisterInstall) {
+                    ((ServerRequestRegisterInstall) req).setInitFinishedCallback(callback);
+                }
+            }
+            for (ServerRequest req : queue.getRequestsWithPath(Defines.RequestPath.RegisterOpen.getPath())) {
+                if (req instanceof ServerRequestRegisterOpen) {
+                    ((ServerRequestRegisterOpen) req).setInitFinishedCallback(callback);
                 }
-
             }
         }
     }
@@ -356,13 +656,7 @@ class ServerRequestQueue {
      */
     public void unlockProcessWait(ServerRequest.PROCESS_WAIT_LOCK lock) {
         synchronized (queue) {
-            Iterator<ServerRequest> iter = queue.iterator();
-            while (iter.hasNext()) {
-                ServerRequest req = iter.next();
-                if (req != null) {
-                    req.removeProcessWaitLock(lock);
-                }
-            }
+            queue.releaseProcessWaitLock(lock);
         }
     }
 
@@ -371,16 +665,26 @@ class ServerRequestQueue {
      */
     public void setStrongMatchWaitLock() {
         synchronized (queue) {
-            Iterator<ServerRequest> iter = queue.iterator();
-            while (iter.hasNext()) {
-                ServerRequest req = iter.next();
-                if (req != null) {
-                    if (req instanceof ServerRequestInitSession) {
-                        req.addProcessWaitLock(ServerRequest.PROCESS_WAIT_LOCK.STRONG_MATCH_PENDING_WAIT_LOCK);
-                    }
-                }
+            for (ServerRequest req : queue.getRequestsWithPath(Defines.RequestPath.RegisterInstall.getPath())) {
+                queue.addProcessWaitLock(req, ServerRequest.PROCESS_WAIT_LOCK.STRONG_MATCH_PENDING_WAIT_LOCK);
             }
+            for (ServerRequest req : queue.getRequestsWithPath(Defines.RequestPath.RegisterOpen.getPath())) {
+                queue.addProcessWaitLock(req, ServerRequest.PROCESS_WAIT_LOCK.STRONG_MATCH_PENDING_WAIT_LOCK);
+            }
+        }
+    }
+
+    // Returns the queued install or open request if any. Should be called with the queue locked.
+    private ServerRequest getInstallOrOpen() {
+        Iterator<ServerRequest> installs = queue.getRequestsWithPath(Defines.RequestPath.RegisterInstall.getPath()).iterator();
+        if (installs.hasNext()) {
+            return installs.next();
+        }
+        Iterator<ServerRequest> opens = queue.getRequestsWithPath(Defines.RequestPath.RegisterOpen.getPath()).iterator();
+        if (opens.hasNext()) {
+            return opens.next();
         }
+        return null;
     }
 
 }
@@ -0,0 +1,303 @@
+package io.branch.referral;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * <p>
+ * Array backed ring buffer holding the requests of the {@link ServerRequestQueue}. Positional access is
+ * constant time. Side indexes keep the queued requests by request path and by the process wait locks they
+ * hold, so that type lookups and lock releases do not need to scan the whole queue.
+ * </p>
+ * <p>
+ * An identity index keeps the position of every queued request, so that a request is found in constant time.
+ * Positions are absolute and the head position moves with the head of the queue, so that adding or removing at
+ * either end does not renumber the other requests. Requests shifted by an insertion or removal in the middle are
+ * renumbered while they are shifted.
+ * </p>
+ * <p>
+ * This class is not thread safe. {@link ServerRequestQueue} synchronises all access on the buffer instance.
+ * </p>
+ */
+class ServerRequestQueueBuffer implements Iterable<ServerRequest> {
+    private static final int INITIAL_CAPACITY = 32;
+
+    private ServerRequest[] items_;
+    private int head_;
+    private int size_;
+    // Absolute position of the head of the queue. The index of a request is its position minus the head position
+    private long headPosition_;
+
+    // Queued requests by request path
+    private final Map<String, Set<ServerRequest>> requestsByPath_ = new HashMap<>();
+    // Queued requests waiting on each process wait lock
+    private final Map<ServerRequest.PROCESS_WAIT_LOCK, Set<ServerRequest>> requestsByLock_ = new EnumMap<>(ServerRequest.PROCESS_WAIT_LOCK.class);
+    // Absolute position of each queued request
+    private final Map<ServerRequest, Long> positionsByRequest_ = new IdentityHashMap<>();
+
+    ServerRequestQueueBuffer() {
+        items_ = new ServerRequest[INITIAL_CAPACITY];
+    }
+
+    int size() {
+        return size_;
+    }
+
+    /**
+     * @param index Position in the queue.
+     * @return {@link ServerRequest} at the given position.
+     * @throws IndexOutOfBoundsException if the index is not a valid position in the queue.
+     */
+    ServerRequest get(int index) {
+        checkIndex(index, size_);
+        return items_[physicalIndex(index)];
+    }
+
+    void add(ServerRequest request) {
+        add(size_, request);
+    }
+
+    /**
+     * Inserts the request at the given position, shifting the following requests back.
+     *
+     * @param index   Position to insert. Should be between 0 and {@link #size()} inclusive.
+     * @param request {@link ServerRequest} to insert.
+     */
+    void add(int index, ServerRequest request) {
+        checkIndex(index, size_ + 1);
+        ensureCapacity(size_ + 1);
+        if (index == 0) {
+            head_ = (head_ - 1 + items_.length) % items_.length;
+            headPosition_--;
+        } else {
+            for (int i = size_; i > index; i--) {
+                items_[physicalIndex(i)] = items_[physicalIndex(i - 1)];
+                updatePosition(items_[physicalIndex(i)], i - 1, i);
+            }
+        }
+        items_[physicalIndex(index)] = request;
+        size_++;
+        addToIndexes(request, index);
+    }
+
+    /**
+     * Removes the request at the given position, shifting the following requests forward.
+     *
+     * @param index Position of the request to remove.
+     * @return The removed {@link ServerRequest}.
+     */
+    ServerRequest remove(int index) {
+        checkIndex(index, size_);
+        ServerRequest request = items_[physicalIndex(index)];
+        removeFromIndexes(request, index);
+        if (index == 0) {
+            items_[head_] = null;
+            head_ = (head_ + 1) % items_.length;
+            headPosition_++;
+        } else {
+            for (int i = index; i < size_ - 1; i++) {
+                items_[physicalIndex(i)] = items_[physicalIndex(i + 1)];
+                updatePosition(items_[physicalIndex(i)], i + 1, i);
+            }
+            items_[physicalIndex(size_ - 1)] = null;
+        }
+        size_--;
+        return request;
+    }
+
+    /**
+     * @param request {@link ServerRequest} to find.
+     * @return Position of the request in the queue. -1 if it is not queued.
+     */
+    int indexOf(ServerRequest request) {
+        Long position = request != null ? positionsByRequest_.get(request) : null;
+        if (position == null) {
+            return request != null ? -1 : indexOfScan(null);
+        }
+        int index = (int) (position - headPosition_);
+        if (index >= 0 && index < size_ && items_[physicalIndex(index)] == request) {
+            return index;
+        }
+        // Not expected since a request is queued once, as the other indexes assume. Fall back to a scan
+        return indexOfScan(request);
+    }
+
+    private int indexOfScan(ServerRequest request) {
+        for (int i = 0; i < size_; i++) {
+            if (items_[physicalIndex(i)] == request) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    void clear() {
+        for (int i = 0; i < size_; i++) {
+            items_[physicalIndex(i)] = null;
+        }
+        head_ = 0;
+        size_ = 0;
+        headPosition_ = 0;
+        requestsByPath_.clear();
+        requestsByLock_.clear();
+        positionsByRequest_.clear();
+    }
+
+    //------------------ Index lookups ----------------------//
+
+    /**
+     * @param requestPath Request path. See {@link Defines.RequestPath}
+     * @return True if a request with the given path is queued.
+     */
+    boolean containsPath(String requestPath) {
+        Set<ServerRequest> requests = requestsByPath_.get(requestPath);
+        return requests != null && !requests.isEmpty();
+    }
+
+    /**
+     * @param requestPath Request path. See {@link Defines.RequestPath}
+     * @return Queued requests with the given path. Should not be modified by the caller.
+     */
+    Set<ServerRequest> getRequestsWithPath(String requestPath) {
+        Set<ServerRequest> requests = requestsByPath_.get(requestPath);
+        return requests != null ? requests : Collections.<ServerRequest>emptySet();
+    }
+
+    /**
+     * Adds a process wait lock to a queued request and updates the lock index.
+     *
+     * @param request {@link ServerRequest} in the queue.
+     * @param lock    {@link ServerRequest.PROCESS_WAIT_LOCK} to add.
+     */
+    void addProcessWaitLock(ServerRequest request, ServerRequest.PROCESS_WAIT_LOCK lock) {
+        if (request != null && lock != null) {
+            request.addProcessWaitLock(lock);
+            getLockIndex(lock).add(request);
+        }
+    }
+
+    /**
+     * Releases the given process wait lock from every queued request waiting on it.
+     *
+     * @param lock {@link ServerRequest.PROCESS_WAIT_LOCK} to release.
+     */
+    void releaseProcessWaitLock(ServerRequest.PROCESS_WAIT_LOCK lock) {
+        Set<ServerRequest> waitingRequests = requestsByLock_.remove(lock);
+        if (waitingRequests != null) {
+            for (ServerRequest req : waitingRequests) {
+                req.removeProcessWaitLock(lock);
+            }
+        }
+    }
+
+    //------------------ Private methods ----------------------//
+
+    private void addToIndexes(ServerRequest request, int index) {
+        if (request != null) {
+            positionsByRequest_.put(request, headPosition_ + index);
+            Set<ServerRequest> requests = requestsByPath_.get(request.getRequestPath());
+            if (requests == null) {
+                requests = new LinkedHashSet<>();
+                requestsByPath_.put(request.getRequestPath(), requests);
+            }
+            requests.add(request);
+            for (ServerRequest.PROCESS_WAIT_LOCK lock : request.locks_) {
+                getLockIndex(lock).add(request);
+            }
+        }
+    }
+
+    private void removeFromIndexes(ServerRequest request, int index) {
+        if (request != null) {
+            Long position = positionsByRequest_.get(request);
+            if (position != null && position == headPosition_ + index) {
+                positionsByRequest_.remove(request);
+            }
+            Set<ServerRequest> requests = requestsByPath_.get(request.getRequestPath());
+            if (requests != null) {
+                requests.remove(request);
+            }
+            for (ServerRequest.PROCESS_WAIT_LOCK lock : request.locks_) {
+                Set<ServerRequest> waitingRequests = requestsByLock_.get(lock);
+                if (waitingRequests != null) {
+                    waitingRequests.remove(request);
+                }
+            }
+        }
+    }
+
+    // Moves the position of a request shifted from one index to another
+    private void updatePosition(ServerRequest request, int fromIndex, int toIndex) {
+        if (request != null) {
+            Long position = positionsByRequest_.get(request);
+            if (position != null && position == headPosition_ + fromIndex) {
+                positionsByRequest_.put(request, headPosition_ + toIndex);
+            }
+        }
+    }
+
+    private Set<ServerRequest> getLockIndex(ServerRequest.PROCESS_WAIT_LOCK lock) {
+        Set<ServerRequest> waitingRequests = requestsByLock_.get(lock);
+        if (waitingRequests == null) {
+            waitingRequests = new LinkedHashSet<>();
+            requestsByLock_.put(lock, waitingRequests);
+        }
+        return waitingRequests;
+    }
+
+    private int physicalIndex(int index) {
+        return (head_ + index) % items_.length;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > items_.length) {
+            ServerRequest[] newItems = new ServerRequest[Math.max(capacity, items_.length * 2)];
+            for (int i = 0; i < size_; i++) {
+                newItems[i] = items_[physicalIndex(i)];
+            }
+            items_ = newItems;
+            head_ = 0;
+        }
+    }
+
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + bound);
+        }
+    }
+
+    /**
+     * Iterates the queued requests in order. Caller should hold the queue lock while iterating.
+     */
+    @Override
+    public Iterator<ServerRequest> iterator() {
+        return new Iterator<ServerRequest>() {
+            private int position_ = 0;
+
+            @Override
+            public boolean hasNext() {
+                return position_ < size_;
+            }
+
+            @Override
+            public ServerRequest next() {
+                if (position_ >= size_) {
+                    throw new NoSuchElementException();
+                }
+                return items_[physicalIndex(position_++)];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
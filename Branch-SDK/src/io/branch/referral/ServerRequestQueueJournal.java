@@ -0,0 +1,317 @@
+package io.branch.referral;
+
+import android.content.Context;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * File backed, append-only journal for the {@link ServerRequestQueue}. Each queue mutation is recorded as a
+ * single checksummed record instead of re-serialising the whole queue. The queue is rebuilt on start up by
+ * replaying the records, and the journal is periodically compacted into a snapshot of the live queue.
+ * </p>
+ * <p>
+ * Record layout : [payload length (int)][CRC32 (long)][operation (byte)][index (int)][payload (UTF-8 JSON)].
+ * The checksum covers the operation, index and payload. A record that is truncated or fails the checksum
+ * marks the end of the valid journal, so a crash in the middle of a write never corrupts the recovered queue.
+ * </p>
+ */
+class ServerRequestQueueJournal {
+    private static final String JOURNAL_FILE = "branch_request_queue.journal";
+
+    // Number of records appended after the last snapshot before the journal is compacted
+    private static final int COMPACTION_THRESHOLD = 100;
+    // Upper bound for a single record payload. Anything bigger is considered a corrupted record
+    private static final int MAX_RECORD_SIZE = 512 * 1024;
+    // length (4) + checksum (8) + operation (1) + index (4)
+    private static final int RECORD_HEADER_SIZE = 17;
+
+    private static final byte OP_ADD = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_CLEAR = 3;
+
+    private final File journalFile_;
+    private final File tempFile_;
+
+    // Guards the journal file. Lock order is fileLock_ -> queue -> pendingLock_
+    private final Object fileLock_ = new Object();
+    // Guards the records encoded but not yet written to the file
+    private final Object pendingLock_ = new Object();
+
+    private ByteArrayOutputStream pendingRecords_ = new ByteArrayOutputStream();
+    private int pendingRecordCount_ = 0;
+    private int recordsSinceSnapshot_ = 0;
+    // Set when the last replay found a truncated or corrupted tail that need to be dropped
+    private boolean hasCorruptedTail_ = false;
+
+    /**
+     * Provides a snapshot of the live queue for compacting the journal.
+     */
+    interface SnapshotSource {
+        /**
+         * Called with the journal file locked. Implementations should capture the queue state and call
+         * {@link #discardPending()} atomically with respect to the queue mutations.
+         *
+         * @return A {@link List} of {@link JSONObject} representing the queued requests in order.
+         */
+        List<JSONObject> takeSnapshot();
+    }
+
+    ServerRequestQueueJournal(Context context) {
+        this(context, JOURNAL_FILE);
+    }
+
+    /**
+     * @param context  Application context.
+     * @param fileName Name of the journal file in the app files directory.
+     */
+    ServerRequestQueueJournal(Context context, String fileName) {
+        File dir = context.getFilesDir();
+        journalFile_ = new File(dir, fileName);
+        tempFile_ = new File(dir, fileName + ".tmp");
+    }
+
+    /**
+     * @return True if a journal was previously written for this app.
+     */
+    boolean exists() {
+        return journalFile_.exists();
+    }
+
+    //------------------ Record encoding. Should be called while the queue is locked --------------//
+
+    /**
+     * Records the addition of a request at the given position in the queue.
+     *
+     * @param index Position at which the request is inserted.
+     * @param json  {@link JSONObject} representation of the request. Null if the request could not be serialised.
+     */
+    void logAdd(int index, JSONObject json) {
+        appendRecord(OP_ADD, index, json == null ? null : json.toString());
+    }
+
+    /**
+     * Records the removal of the request at the given position in the queue.
+     *
+     * @param index Position of the removed request.
+     */
+    void logRemove(int index) {
+        appendRecord(OP_REMOVE, index, null);
+    }
+
+    /**
+     * Records clearing of the queue.
+     */
+    void logClear() {
+        appendRecord(OP_CLEAR, 0, null);
+    }
+
+    /**
+     * Drops any records not yet written to the file. Only valid as part of a snapshot, since the snapshot
+     * already reflects those mutations.
+     */
+    void discardPending() {
+        synchronized (pendingLock_) {
+            pendingRecords_ = new ByteArrayOutputStream();
+            pendingRecordCount_ = 0;
+        }
+    }
+
+    private void appendRecord(byte op, int index, String payload) {
+        try {
+            byte[] payloadBytes = payload == null ? new byte[0] : payload.getBytes("UTF-8");
+            synchronized (pendingLock_) {
+                writeRecord(new DataOutputStream(pendingRecords_), op, index, payloadBytes);
+                pendingRecordCount_++;
+            }
+        } catch (IOException ex) {
+            PrefHelper.Debug("BranchSDK", "Failed to journal queue operation " + ex.getMessage());
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, byte op, int index, byte[] payloadBytes) throws IOException {
+        out.writeInt(payloadBytes.length);
+        out.writeLong(checksum(op, index, payloadBytes));
+        out.writeByte(op);
+        out.writeInt(index);
+        out.write(payloadBytes);
+        out.flush();
+    }
+
+    private static long checksum(byte op, int index, byte[] payloadBytes) {
+        CRC32 crc = new CRC32();
+        crc.update(op);
+        crc.update(new byte[]{(byte) (index >>> 24), (byte) (index >>> 16), (byte) (index >>> 8), (byte) index});
+        crc.update(payloadBytes);
+        return crc.getValue();
+    }
+
+    //------------------ File operations. Should be called on a background thread --------------//
+
+    /**
+     * Appends all pending records to the journal file and compacts the journal if needed.
+     *
+     * @param snapshotSource {@link SnapshotSource} used in case the journal need to be compacted.
+     */
+    void writePending(SnapshotSource snapshotSource) {
+        synchronized (fileLock_) {
+            byte[] records;
+            int recordCount;
+            synchronized (pendingLock_) {
+                records = pendingRecords_.toByteArray();
+                recordCount = pendingRecordCount_;
+                pendingRecords_ = new ByteArrayOutputStream();
+                pendingRecordCount_ = 0;
+            }
+            if (records.length > 0) {
+                FileOutputStream out = null;
+                try {
+                    out = new FileOutputStream(journalFile_, true);
+                    out.write(records);
+                    out.getFD().sync();
+                    recordsSinceSnapshot_ += recordCount;
+                } catch (IOException ex) {
+                    PrefHelper.Debug("BranchSDK", "Failed to write queue journal " + ex.getMessage());
+                } finally {
+                    closeQuietly(out);
+                }
+            }
+            if (recordsSinceSnapshot_ >= COMPACTION_THRESHOLD) {
+                compact(snapshotSource);
+            }
+        }
+    }
+
+    /**
+     * Replaces the journal with a snapshot of the current queue state.
+     *
+     * @param snapshotSource {@link SnapshotSource} providing the current queue state.
+     */
+    void compact(SnapshotSource snapshotSource) {
+        synchronized (fileLock_) {
+            List<JSONObject> snapshot = snapshotSource.takeSnapshot();
+            FileOutputStream out = null;
+            try {
+                out = new FileOutputStream(tempFile_, false);
+                DataOutputStream dataOut = new DataOutputStream(out);
+                for (int i = 0; i < snapshot.size(); i++) {
+                    JSONObject json = snapshot.get(i);
+                    byte[] payloadBytes = json == null ? new byte[0] : json.toString().getBytes("UTF-8");
+                    writeRecord(dataOut, OP_ADD, i, payloadBytes);
+                }
+                out.getFD().sync();
+                closeQuietly(out);
+                out = null;
+                // Rename is atomic. Either the old journal or the complete snapshot survives a crash
+                if (tempFile_.renameTo(journalFile_)) {
+                    recordsSinceSnapshot_ = 0;
+                    hasCorruptedTail_ = false;
+                }
+            } catch (IOException ex) {
+                PrefHelper.Debug("BranchSDK", "Failed to compact queue journal " + ex.getMessage());
+            } finally {
+                closeQuietly(out);
+            }
+        }
+    }
+
+    /**
+     * Replays the journal and rebuilds the queue contents. Replay stops at the first truncated or corrupted record.
+     *
+     * @return A {@link List} of {@link JSONObject} representing the queued requests in order. Entries may be
+     * null for requests which could not be serialised.
+     */
+    List<JSONObject> replay() {
+        List<JSONObject> result = new ArrayList<>();
+        synchronized (fileLock_) {
+            if (!journalFile_.exists()) {
+                return result;
+            }
+            DataInputStream in = null;
+            int records = 0;
+            long validLength = 0;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile_)));
+                while (true) {
+                    int length = in.readInt();
+                    if (length < 0 || length > MAX_RECORD_SIZE) {
+                        break;
+                    }
+                    long checksum = in.readLong();
+                    byte op = in.readByte();
+                    int index = in.readInt();
+                    byte[] payloadBytes = new byte[length];
+                    in.readFully(payloadBytes);
+
+                    if (checksum(op, index, payloadBytes) != checksum) {
+                        PrefHelper.Debug("BranchSDK", "Queue journal checksum mismatch. Ignoring rest of the journal");
+                        break;
+                    }
+                    applyRecord(result, op, index, payloadBytes);
+                    records++;
+                    validLength += RECORD_HEADER_SIZE + length;
+                }
+            } catch (EOFException ignore) {
+                // End of journal or a record truncated by a crash
+            } catch (IOException ex) {
+                PrefHelper.Debug("BranchSDK", "Failed to read queue journal " + ex.getMessage());
+            } finally {
+                closeQuietly(in);
+            }
+            recordsSinceSnapshot_ = records;
+            hasCorruptedTail_ = validLength != journalFile_.length();
+        }
+        return result;
+    }
+
+    /**
+     * @return True if the last {@link #replay()} found a truncated or corrupted record. The journal should be
+     * compacted before appending any more records in that case.
+     */
+    boolean hasCorruptedTail() {
+        return hasCorruptedTail_;
+    }
+
+    private static void applyRecord(List<JSONObject> queue, byte op, int index, byte[] payloadBytes) throws IOException {
+        if (op == OP_ADD) {
+            JSONObject json = null;
+            if (payloadBytes.length > 0) {
+                try {
+                    json = new JSONObject(new String(payloadBytes, "UTF-8"));
+                } catch (JSONException ignore) {
+                }
+            }
+            queue.add(Math.max(0, Math.min(index, queue.size())), json);
+        } else if (op == OP_REMOVE) {
+            if (index >= 0 && index < queue.size()) {
+                queue.remove(index);
+            }
+        } else if (op == OP_CLEAR) {
+            queue.clear();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package io.branch.referral;
+
+import android.content.Context;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Disk backed store for requests spilled out of a full {@link ServerRequestQueue}. Spilled requests are kept
+ * in the order they were spilled and moved back to the queue once it has room again. The store is persisted
+ * with its own {@link ServerRequestQueueJournal}, so spilled requests survive an app restart.
+ * </p>
+ */
+class ServerRequestQueueOverflowStore {
+    private static final String OVERFLOW_JOURNAL_FILE = "branch_request_overflow.journal";
+
+    private final List<JSONObject> spilled_;
+    private final ServerRequestQueueJournal journal_;
+    private final ServerRequestQueuePersister persister_;
+
+    /**
+     * @param context Application context.
+     * @return True if requests were spilled to disk in a previous session.
+     */
+    static boolean exists(Context context) {
+        return new File(context.getFilesDir(), OVERFLOW_JOURNAL_FILE).exists();
+    }
+
+    ServerRequestQueueOverflowStore(Context context) {
+        journal_ = new ServerRequestQueueJournal(context, OVERFLOW_JOURNAL_FILE);
+        spilled_ = new ArrayList<>();
+        List<JSONObject> storedRequests = journal_.replay();
+        for (JSONObject json : storedRequests) {
+            if (json != null) {
+                spilled_.add(json);
+            }
+        }
+        ServerRequestQueueJournal.SnapshotSource snapshotSource = new ServerRequestQueueJournal.SnapshotSource() {
+            @Override
+            public List<JSONObject> takeSnapshot() {
+                synchronized (spilled_) {
+                    List<JSONObject> snapshot = new ArrayList<>(spilled_);
+                    journal_.discardPending();
+                    return snapshot;
+                }
+            }
+        };
+        if (journal_.hasCorruptedTail() || spilled_.size() != storedRequests.size()) {
+            journal_.compact(snapshotSource);
+        }
+        persister_ = new ServerRequestQueuePersister(journal_, snapshotSource);
+    }
+
+    int size() {
+        synchronized (spilled_) {
+            return spilled_.size();
+        }
+    }
+
+    /**
+     * Adds a request to the end of the store.
+     *
+     * @param json {@link JSONObject} representation of the spilled request.
+     */
+    void push(JSONObject json) {
+        if (json != null) {
+            synchronized (spilled_) {
+                spilled_.add(json);
+                journal_.logAdd(spilled_.size() - 1, json);
+            }
+            persister_.markDirty();
+        }
+    }
+
+    /**
+     * Removes the oldest spilled request.
+     *
+     * @return {@link JSONObject} representation of the oldest spilled request. Null if the store is empty.
+     */
+    JSONObject poll() {
+        JSONObject json = null;
+        synchronized (spilled_) {
+            if (!spilled_.isEmpty()) {
+                json = spilled_.remove(0);
+                journal_.logRemove(0);
+            }
+        }
+        if (json != null) {
+            persister_.markDirty();
+        }
+        return json;
+    }
+
+    void clear() {
+        synchronized (spilled_) {
+            spilled_.clear();
+            journal_.logClear();
+        }
+        persister_.markDirty();
+    }
+
+    void flush() {
+        persister_.flush();
+    }
+}
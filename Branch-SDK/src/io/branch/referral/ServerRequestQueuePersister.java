@@ -0,0 +1,60 @@
+package io.branch.referral;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>
+ * Single writer for persisting the {@link ServerRequestQueue}. Queue mutations only mark the queue dirty and
+ * the journal is written once per debounce window as background work on the {@link BranchExecutor}. A burst of mutations results
+ * in a single write instead of a thread and a write per mutation.
+ * </p>
+ */
+class ServerRequestQueuePersister {
+    // Default time in milliseconds to wait for more queue mutations before writing the journal
+    static final long DEFAULT_DEBOUNCE_WINDOW = 250;
+
+    private final ServerRequestQueueJournal journal_;
+    private final ServerRequestQueueJournal.SnapshotSource snapshotSource_;
+    private final AtomicBoolean isDirty_ = new AtomicBoolean(false);
+    private volatile long debounceWindow_ = DEFAULT_DEBOUNCE_WINDOW;
+
+    private final Runnable writeTask_ = new Runnable() {
+        @Override
+        public void run() {
+            // Clear the flag before writing so that mutations during the write schedule another one
+            isDirty_.set(false);
+            journal_.writePending(snapshotSource_);
+        }
+    };
+
+    ServerRequestQueuePersister(ServerRequestQueueJournal journal, ServerRequestQueueJournal.SnapshotSource snapshotSource) {
+        journal_ = journal;
+        snapshotSource_ = snapshotSource;
+    }
+
+    /**
+     * Sets the time to wait for more queue mutations before writing them to the journal.
+     *
+     * @param debounceWindow Debounce window in milliseconds. Zero or negative values write on every mutation.
+     */
+    void setDebounceWindow(long debounceWindow) {
+        debounceWindow_ = Math.max(0, debounceWindow);
+    }
+
+    /**
+     * Marks the queue as modified. Schedules a journal write unless one is already pending.
+     */
+    void markDirty() {
+        if (isDirty_.compareAndSet(false, true)) {
+            BranchExecutor.getInstance().schedule(writeTask_, debounceWindow_, BranchExecutor.PRIORITY_BACKGROUND);
+        }
+    }
+
+    /**
+     * Writes any pending queue mutations to the journal without waiting for the debounce window.
+     * The write happens in background, so this is safe to call from the main thread.
+     */
+    void flush() {
+        BranchExecutor.getInstance().execute(writeTask_, BranchExecutor.PRIORITY_NORMAL);
+    }
+}
@@ -105,6 +105,16 @@ class ServerRequestRActionCompleted extends ServerRequest {
         return false;
     }
 
+    @Override
+    public Branch.DispatchLane getDispatchLane() {
+        return Branch.DispatchLane.EVENTS;
+    }
+
+    @Override
+    PRIORITY getPriority() {
+        return PRIORITY.BACKGROUND;
+    }
+
     @Override
     public void clearCallbacks() {
         //No implementation on purpose
@@ -114,4 +124,9 @@ class ServerRequestRActionCompleted extends ServerRequest {
     public boolean shouldRetryOnFail() {
         return true;   //Action completed request need to retry on failure.
     }
+
+    @Override
+    ServerRequestRetryPolicy getRetryPolicy() {
+        return ServerRequestRetryPolicy.EVENTS;
+    }
 }
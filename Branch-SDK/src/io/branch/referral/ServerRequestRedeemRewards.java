@@ -15,6 +15,8 @@ import org.json.JSONObject;
 class ServerRequestRedeemRewards extends ServerRequest {
 
     Branch.BranchReferralStateChangedListener callback_;
+    // Set in background once the redeemed credits are deducted from the stored credit count
+    private boolean isRedemptionSucceeded_ = false;
     int actualNumOfCreditsToRedeem_ = 0;
 
     /**
@@ -83,7 +85,7 @@ class ServerRequestRedeemRewards extends ServerRequest {
     }
 
     @Override
-    public void onRequestSucceeded(ServerResponse resp, Branch branch) {
+    public void onRequestSucceededInBackground(ServerResponse resp, Branch branch) {
         boolean isRedemptionSucceeded = false;
         JSONObject post = getPost();
         if (post != null) {
@@ -101,6 +103,12 @@ class ServerRequestRedeemRewards extends ServerRequest {
             }
         }
 
+        isRedemptionSucceeded_ = isRedemptionSucceeded;
+    }
+
+    @Override
+    public void onRequestSucceeded(ServerResponse resp, Branch branch) {
+        boolean isRedemptionSucceeded = isRedemptionSucceeded_;
         if (callback_ != null) {
             BranchError branchError = isRedemptionSucceeded ? null : new BranchError("Trouble redeeming rewards.", BranchError.ERR_BRANCH_REDEEM_REWARD);
             callback_.onStateChanged(isRedemptionSucceeded, branchError);
@@ -120,6 +128,11 @@ class ServerRequestRedeemRewards extends ServerRequest {
         return false;
     }
 
+    @Override
+    public Branch.DispatchLane getDispatchLane() {
+        return Branch.DispatchLane.REWARDS;
+    }
+
     @Override
     public void clearCallbacks() {
         callback_ = null;
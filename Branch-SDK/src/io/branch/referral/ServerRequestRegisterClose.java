@@ -61,6 +61,11 @@ class ServerRequestRegisterClose extends ServerRequest {
 
     @Override
     public void onRequestSucceeded(ServerResponse resp, Branch branch) {
+        //No implementation on purpose
+    }
+
+    @Override
+    public void onRequestSucceededInBackground(ServerResponse resp, Branch branch) {
         // Clear the latest session params on close
         prefHelper_.setSessionParams(PrefHelper.NO_STRING_VALUE);
     }
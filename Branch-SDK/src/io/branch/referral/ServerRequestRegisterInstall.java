@@ -73,8 +73,8 @@ class ServerRequestRegisterInstall extends ServerRequestInitSession {
     }
 
     @Override
-    public void onRequestSucceeded(ServerResponse resp, Branch branch) {
-        super.onRequestSucceeded(resp, branch);
+    public void onRequestSucceededInBackground(ServerResponse resp, Branch branch) {
+        super.onRequestSucceededInBackground(resp, branch);
         try {
             prefHelper_.setUserURL(resp.getObject().getString(Defines.Jsonkey.Link.getKey()));
 
@@ -108,15 +108,18 @@ class ServerRequestRegisterInstall extends ServerRequestInitSession {
             } else {
                 prefHelper_.setSessionParams(PrefHelper.NO_STRING_VALUE);
             }
-            if (callback_ != null) {
-                callback_.onInitFinished(branch.getLatestReferringParams(), null);
-            }
-
             prefHelper_.setAppVersion(systemObserver_.getAppVersion());
 
         } catch (Exception ex) {
             ex.printStackTrace();
         }
+    }
+
+    @Override
+    public void onRequestSucceeded(ServerResponse resp, Branch branch) {
+        if (callback_ != null) {
+            callback_.onInitFinished(branch.getLatestReferringParams(), null);
+        }
         onInitSessionCompleted(resp, branch);
     }
 
@@ -59,8 +59,8 @@ class ServerRequestRegisterOpen extends ServerRequestInitSession {
     }
 
     @Override
-    public void onRequestSucceeded(ServerResponse resp, Branch branch) {
-        super.onRequestSucceeded(resp, branch);
+    public void onRequestSucceededInBackground(ServerResponse resp, Branch branch) {
+        super.onRequestSucceededInBackground(resp, branch);
         try {
             if (resp.getObject().has(Defines.Jsonkey.LinkClickID.getKey())) {
                 prefHelper_.setLinkClickID(resp.getObject().getString(Defines.Jsonkey.LinkClickID.getKey()));
@@ -93,15 +93,18 @@ class ServerRequestRegisterOpen extends ServerRequestInitSession {
                 prefHelper_.setSessionParams(PrefHelper.NO_STRING_VALUE);
             }
 
-            if (callback_ != null) {
-                callback_.onInitFinished(branch.getLatestReferringParams(), null);
-            }
-
             prefHelper_.setAppVersion(systemObserver_.getAppVersion());
 
         } catch (Exception ex) {
             ex.printStackTrace();
         }
+    }
+
+    @Override
+    public void onRequestSucceeded(ServerResponse resp, Branch branch) {
+        if (callback_ != null) {
+            callback_.onInitFinished(branch.getLatestReferringParams(), null);
+        }
         onInitSessionCompleted(resp, branch);
     }
 
@@ -69,6 +69,21 @@ class ServerRequestRegisterView extends ServerRequest {
         return false;
     }
 
+    @Override
+    public Branch.DispatchLane getDispatchLane() {
+        return Branch.DispatchLane.EVENTS;
+    }
+
+    @Override
+    PRIORITY getPriority() {
+        return PRIORITY.BACKGROUND;
+    }
+
+    @Override
+    boolean isCoalescible() {
+        return callback_ == null;
+    }
+
     @Override
     public void clearCallbacks() {
         callback_ = null;
@@ -0,0 +1,72 @@
+package io.branch.referral;
+
+import java.util.Random;
+
+/**
+ * <p>
+ * Retry budget and backoff for a type of {@link ServerRequest}. A request failing with a transient error, such as
+ * a timeout or a server error, is attempted again after an exponentially growing delay with random jitter, until
+ * the number of attempts reaches the budget of the request type. Requests rejected by the server are not retried.
+ * The jitter spreads the retries of many clients recovering from the same outage.
+ * </p>
+ */
+class ServerRequestRetryPolicy {
+    // Requests which need to be replayed on failure, such as identify
+    static final ServerRequestRetryPolicy DEFAULT = new ServerRequestRetryPolicy(5, 1000, 60 * 1000);
+    // Events, which have no user waiting on them and can be retried for longer
+    static final ServerRequestRetryPolicy EVENTS = new ServerRequestRetryPolicy(10, 2000, 5 * 60 * 1000);
+
+    // Upper bound in milliseconds for the delay between retries of requests which are not replayed
+    static final long MAX_NETWORK_RETRY_DELAY = 30 * 1000;
+
+    private static final Random random_ = new Random();
+
+    private final int maxAttempts_;
+    private final long baseDelay_;
+    private final long maxDelay_;
+
+    /**
+     * @param maxAttempts Maximum number of attempts including the first one.
+     * @param baseDelay   Delay in milliseconds before the first retry.
+     * @param maxDelay    Upper bound in milliseconds for the delay between attempts.
+     */
+    ServerRequestRetryPolicy(int maxAttempts, long baseDelay, long maxDelay) {
+        maxAttempts_ = Math.max(1, maxAttempts);
+        baseDelay_ = baseDelay;
+        maxDelay_ = maxDelay;
+    }
+
+    /**
+     * Returns the policy of requests which are not replayed on failure. They are retried a few times as
+     * configured with {@link Branch#setRetryCount(int)} and {@link Branch#setRetryInterval(int)}, and the
+     * failure is then reported to the callback.
+     *
+     * @param maxRetries    Maximum number of retries after the first attempt.
+     * @param retryInterval Delay in milliseconds before the first retry.
+     * @return {@link ServerRequestRetryPolicy} allowing the given number of retries.
+     */
+    static ServerRequestRetryPolicy withRetries(int maxRetries, long retryInterval) {
+        return new ServerRequestRetryPolicy(maxRetries + 1, retryInterval, MAX_NETWORK_RETRY_DELAY);
+    }
+
+    int getMaxAttempts() {
+        return maxAttempts_;
+    }
+
+    /**
+     * Returns the delay before the next attempt. The delay doubles on every failed attempt up to the maximum
+     * delay, and a random jitter of up to half the delay is subtracted.
+     *
+     * @param failedAttempts Number of attempts failed so far.
+     * @return Delay in milliseconds before the next attempt.
+     */
+    long getBackoffDelay(int failedAttempts) {
+        int exponent = Math.min(Math.max(0, failedAttempts - 1), 30);
+        long delay = Math.min(maxDelay_, baseDelay_ << exponent);
+        long jitter;
+        synchronized (random_) {
+            jitter = (long) (random_.nextDouble() * (delay / 2));
+        }
+        return delay - jitter;
+    }
+}
@@ -489,6 +489,8 @@ class SystemObserver {
         protected Void doInBackground(Void... params) {
 
             final CountDownLatch latch = new CountDownLatch(1);
+            // The lookup gets a thread of its own. Waiting on a task of the SDK executor from this task could use up
+            // the timeout while the lookup waits for a free thread
             new Thread(new Runnable() {
                 @Override
                 public void run() {
@@ -498,7 +500,7 @@ class SystemObserver {
                     getLATValue(adInfoObj);
                     latch.countDown();
                 }
-            }).start();
+            }, "BranchGAIDFetch").start();
 
             try {
                 //Wait GAID_FETCH_TIME_OUT milli sec max to receive the GAID and LAT
@@ -510,6 +512,12 @@ class SystemObserver {
             return null;
         }
 
+        @Override
+        protected int getTaskPriority() {
+            // Session initialisation waits on the advertising id
+            return BranchExecutor.PRIORITY_INTERACTIVE;
+        }
+
         @Override
         protected void onPostExecute(Void aVoid) {
             super.onPostExecute(aVoid);
@@ -0,0 +1,166 @@
+package io.branch.referral.network;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import io.branch.referral.Defines;
+
+/**
+ * <p>
+ * Rolling round trip time statistics for each Branch API endpoint. Timeouts are derived from them the way TCP
+ * derives its retransmission timeout: the smoothed round trip time plus four times its variation. The timeout is
+ * doubled on each consecutive timeout of the endpoint and reset by the next response. Until an endpoint has enough
+ * samples, the maximum timeout is used.
+ * </p>
+ */
+class BranchLatencyTracker {
+    // Weight of a new sample in the smoothed round trip time
+    private static final double RTT_GAIN = 0.125;
+    // Weight of a new sample in the round trip time variation
+    private static final double RTT_VARIATION_GAIN = 0.25;
+    private static final int RTT_VARIATION_FACTOR = 4;
+    // With the mean deviation about 0.8 standard deviations, this factor puts the hedge delay near the 95th percentile
+    private static final int HEDGE_VARIATION_FACTOR = 2;
+    // Number of samples needed before the timeout of an endpoint is derived from its measurements
+    private static final int MIN_SAMPLES = 3;
+    private static final int MAX_BACKOFF = 8;
+
+    private static BranchLatencyTracker instance_;
+
+    private final Map<Defines.RequestPath, EndpointStats> stats_ = new EnumMap<>(Defines.RequestPath.class);
+
+    static synchronized BranchLatencyTracker getInstance() {
+        if (instance_ == null) {
+            instance_ = new BranchLatencyTracker();
+        }
+        return instance_;
+    }
+
+    /**
+     * Adds the round trip time of a request which got a response.
+     *
+     * @param path          Request path or URL path of the request
+     * @param roundTripTime Round trip time in milliseconds
+     */
+    void onResponse(String path, long roundTripTime) {
+        EndpointStats stats = getStats(path);
+        if (stats != null) {
+            synchronized (stats) {
+                stats.addSample(roundTripTime);
+            }
+        }
+    }
+
+    /**
+     * Records a request which timed out, doubling the timeout of the endpoint until it gets a response.
+     *
+     * @param path Request path or URL path of the request
+     */
+    void onTimeout(String path) {
+        EndpointStats stats = getStats(path);
+        if (stats != null) {
+            synchronized (stats) {
+                stats.backoff_ = Math.min(stats.backoff_ * 2, MAX_BACKOFF);
+            }
+        }
+    }
+
+    /**
+     * Gets the timeout for the next request to an endpoint.
+     *
+     * @param path       Request path or URL path of the request
+     * @param minTimeout Lower bound of the timeout in milliseconds
+     * @param maxTimeout Upper bound of the timeout in milliseconds
+     * @return Timeout in milliseconds within the bounds
+     */
+    int getTimeout(String path, int minTimeout, int maxTimeout) {
+        EndpointStats stats = getStats(path);
+        if (stats == null) {
+            return maxTimeout;
+        }
+        long timeout;
+        synchronized (stats) {
+            if (stats.sampleCount_ < MIN_SAMPLES) {
+                return maxTimeout;
+            }
+            timeout = (long) (stats.smoothedRtt_ + RTT_VARIATION_FACTOR * stats.rttVariation_) * stats.backoff_;
+        }
+        return (int) Math.max(minTimeout, Math.min(maxTimeout, timeout));
+    }
+
+    /**
+     * Gets the time after which a request to an endpoint is slower than about 95% of its requests.
+     *
+     * @param path Request path or URL path of the request
+     * @return Delay in milliseconds. Zero if the endpoint has not enough samples
+     */
+    long getHedgeDelay(String path) {
+        EndpointStats stats = getStats(path);
+        if (stats == null) {
+            return 0;
+        }
+        synchronized (stats) {
+            if (stats.sampleCount_ < MIN_SAMPLES) {
+                return 0;
+            }
+            return (long) (stats.smoothedRtt_ + HEDGE_VARIATION_FACTOR * stats.rttVariation_);
+        }
+    }
+
+    private EndpointStats getStats(String path) {
+        Defines.RequestPath endpoint = getEndpoint(path);
+        if (endpoint == null) {
+            return null;
+        }
+        synchronized (stats_) {
+            EndpointStats stats = stats_.get(endpoint);
+            if (stats == null) {
+                stats = new EndpointStats();
+                stats_.put(endpoint, stats);
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * Finds the endpoint of a request. Paths with parameters, such as v1/credits/{identity}, map to their endpoint.
+     *
+     * @param path Request path or URL path of the request
+     * @return {@link Defines.RequestPath} of the request. Null if the path is not a Branch API endpoint
+     */
+    static Defines.RequestPath getEndpoint(String path) {
+        if (path == null) {
+            return null;
+        }
+        if (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        Defines.RequestPath endpoint = null;
+        for (Defines.RequestPath requestPath : Defines.RequestPath.values()) {
+            if (path.startsWith(requestPath.getPath())
+                    && (endpoint == null || requestPath.getPath().length() > endpoint.getPath().length())) {
+                endpoint = requestPath;
+            }
+        }
+        return endpoint;
+    }
+
+    private static class EndpointStats {
+        double smoothedRtt_;
+        double rttVariation_;
+        int sampleCount_;
+        int backoff_ = 1;
+
+        void addSample(long rtt) {
+            if (sampleCount_ == 0) {
+                smoothedRtt_ = rtt;
+                rttVariation_ = rtt / 2.0;
+            } else {
+                rttVariation_ = (1 - RTT_VARIATION_GAIN) * rttVariation_ + RTT_VARIATION_GAIN * Math.abs(smoothedRtt_ - rtt);
+                smoothedRtt_ = (1 - RTT_GAIN) * smoothedRtt_ + RTT_GAIN * rtt;
+            }
+            sampleCount_++;
+            backoff_ = 1;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package io.branch.referral.network;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import io.branch.referral.PrefHelper;
+
+/**
+ * <p>
+ * {@link BranchRemoteInterface} recording the requests made through another remote interface. Every request is
+ * appended to a file as a line of JSON with its method, path and payload, the response or error, and its timing.
+ * The recording can be served again with {@link BranchReplayRemoteInterface}, for instance to benchmark the SDK
+ * against a captured session without the network. Note that recordings hold the Branch key and the device and
+ * user identifiers sent with the requests.
+ * </p>
+ * <p>
+ * To record, wrap the default remote interface with
+ * {@code branch.setBranchRemoteInterface(new BranchRecordingRemoteInterface(BranchRemoteInterface.getDefaultBranchRemoteInterface(context), file))}
+ * </p>
+ */
+public class BranchRecordingRemoteInterface extends BranchRemoteInterface {
+    static final String KEY_METHOD = "method";
+    static final String KEY_PATH = "path";
+    static final String KEY_PAYLOAD = "payload";
+    static final String KEY_STATUS_CODE = "status_code";
+    static final String KEY_RESPONSE = "response";
+    static final String KEY_ERROR_CODE = "error_code";
+    static final String KEY_START_OFFSET = "start_offset";
+    static final String KEY_LATENCY = "latency";
+    static final String METHOD_GET = "GET";
+    static final String METHOD_POST = "POST";
+
+    private final BranchRemoteInterface remoteInterface_;
+    private final Writer writer_;
+    private final long startTime_;
+
+    /**
+     * @param remoteInterface {@link BranchRemoteInterface} making the requests
+     * @param file            File the requests are appended to
+     * @throws IOException if the file can not be opened for writing
+     */
+    public BranchRecordingRemoteInterface(BranchRemoteInterface remoteInterface, File file) throws IOException {
+        remoteInterface_ = remoteInterface;
+        writer_ = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"));
+        startTime_ = System.currentTimeMillis();
+    }
+
+    @Override
+    public BranchResponse doRestfulGet(String url) throws BranchRemoteException {
+        long startTime = System.currentTimeMillis();
+        try {
+            BranchResponse response = remoteInterface_.doRestfulGet(url);
+            record(METHOD_GET, url, null, startTime, response, 0);
+            return response;
+        } catch (BranchRemoteException ex) {
+            record(METHOD_GET, url, null, startTime, null, ex.getBranchErrorCode());
+            throw ex;
+        }
+    }
+
+    @Override
+    public BranchResponse doRestfulPost(String url, JSONObject payload) throws BranchRemoteException {
+        return doRestfulPost(url, payload, null);
+    }
+
+    @Override
+    public BranchResponse doRestfulPost(String url, JSONObject payload, String idempotencyKey) throws BranchRemoteException {
+        // Copy the payload as sent, before the remote interface adds to it
+        String payloadString = payload.toString();
+        long startTime = System.currentTimeMillis();
+        try {
+            BranchResponse response = remoteInterface_.doRestfulPost(url, payload, idempotencyKey);
+            record(METHOD_POST, url, payloadString, startTime, response, 0);
+            return response;
+        } catch (BranchRemoteException ex) {
+            record(METHOD_POST, url, payloadString, startTime, null, ex.getBranchErrorCode());
+            throw ex;
+        }
+    }
+
+    @Override
+    public void prewarmConnection(String url) {
+        remoteInterface_.prewarmConnection(url);
+    }
+
+    /**
+     * Closes the recording file. Requests made after this are not recorded.
+     */
+    public synchronized void close() {
+        try {
+            writer_.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    private void record(String method, String url, String payload, long startTime, BranchResponse response, int errorCode) {
+        long latency = System.currentTimeMillis() - startTime;
+        try {
+            JSONObject entry = new JSONObject();
+            entry.put(KEY_METHOD, method);
+            entry.put(KEY_PATH, getPath(url));
+            if (payload != null) {
+                entry.put(KEY_PAYLOAD, new JSONObject(payload));
+            }
+            if (response != null) {
+                entry.put(KEY_STATUS_CODE, response.getResponseCode());
+                entry.put(KEY_RESPONSE, response.getResponseData());
+            } else {
+                entry.put(KEY_ERROR_CODE, errorCode);
+            }
+            entry.put(KEY_START_OFFSET, startTime - startTime_);
+            entry.put(KEY_LATENCY, latency);
+            synchronized (this) {
+                writer_.write(entry.toString());
+                writer_.write('\n');
+                writer_.flush();
+            }
+        } catch (JSONException | IOException ex) {
+            PrefHelper.Debug("BranchSDK", "Unable to record the request: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * @return Path of the url without the leading slash and the query, such as v1/open
+     */
+    static String getPath(String url) {
+        try {
+            String path = new URL(url).getPath();
+            return path.startsWith("/") ? path.substring(1) : path;
+        } catch (MalformedURLException ex) {
+            return url;
+        }
+    }
+}
@@ -7,8 +7,15 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.net.HttpURLConnection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import io.branch.referral.Branch;
 import io.branch.referral.BranchError;
+import io.branch.referral.BranchExecutor;
 import io.branch.referral.BuildConfig;
 import io.branch.referral.Defines;
 import io.branch.referral.PrefHelper;
@@ -33,6 +40,12 @@ public abstract class BranchRemoteInterface {
      */
     public static final String RETRY_NUMBER = "retryNumber";
 
+    /**
+     * Request header carrying the idempotency key of a POST request. Every attempt of a request, including retries
+     * and hedged duplicates, carries the same key so that the server can execute the request only once.
+     */
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     //----------- Abstract methods-----------------------//
 
     /**
@@ -73,6 +86,36 @@ public abstract class BranchRemoteInterface {
      */
     public abstract BranchResponse doRestfulPost(String url, JSONObject payload) throws BranchRemoteException;
 
+    /**
+     * <p>
+     * Does a RESTful POST to Branch servers with the idempotency key of the request. Override this to send the key
+     * in the {@link #IDEMPOTENCY_KEY_HEADER} header. The default implementation calls
+     * {@link #doRestfulPost(String, JSONObject)} without the key.
+     * </p>
+     *
+     * @param url            The url end point
+     * @param payload        The JSon object payload for the post request
+     * @param idempotencyKey Key identifying every attempt of the request. May be null
+     * @return {@link io.branch.referral.network.BranchRemoteInterface.BranchResponse} with the post result data and http status code
+     * @throws BranchRemoteException Branch remote exception is thrown when there is an error in communicating to the Branch servers
+     */
+    public BranchResponse doRestfulPost(String url, JSONObject payload, String idempotencyKey) throws BranchRemoteException {
+        return doRestfulPost(url, payload);
+    }
+
+    /**
+     * <p>
+     * Opens a connection to the Branch servers ahead of the first request, so that the DNS lookup and the TCP and TLS
+     * handshakes are off the path of the first request. Called on a background thread while the SDK is constructed,
+     * when enabled with {@link Branch#enableConnectionPrewarm()}. The default implementation does nothing. Override
+     * this if your network layer keeps connections alive between requests.
+     * </p>
+     *
+     * @param url The base url of the Branch API
+     */
+    public void prewarmConnection(String url) {
+    }
+
     //--------- public methods-----------------//
 
     /**
@@ -85,23 +128,24 @@ public abstract class BranchRemoteInterface {
      * @return {@link ServerResponse} object representing the result of RESTful GET to Branch Server
      */
     public final ServerResponse make_restful_get(String url, JSONObject params, String tag, String branchKey) {
-        String modifiedUrl = url;
-        params = params != null ? params : new JSONObject();
-        if (addCommonParams(params, branchKey)) {
-            modifiedUrl += this.convertJSONtoString(params);
-        } else {
+        if (branchKey.equals(PrefHelper.NO_STRING_VALUE)) {
             return new ServerResponse(tag, BranchError.ERR_BRANCH_KEY_INVALID);
         }
+        String modifiedUrl = BranchUrlEncoder.buildGetUrl(url, params, branchKey);
 
         long reqStartTime = System.currentTimeMillis();
         PrefHelper.Debug("BranchSDK", "getting " + modifiedUrl);
 
         try {
             BranchResponse response = doRestfulGet(modifiedUrl);
+            BranchLatencyTracker.getInstance().onResponse(tag, System.currentTimeMillis() - reqStartTime);
             return processEntityForJSON(response.responseData, response.responseCode, tag);
         } catch (BranchRemoteException branchError) {
             if (branchError.branchErrorCode == BranchError.ERR_BRANCH_REQ_TIMED_OUT) {
+                BranchLatencyTracker.getInstance().onTimeout(tag);
                 return new ServerResponse(tag, BranchError.ERR_BRANCH_REQ_TIMED_OUT);
+            } else if (branchError.branchErrorCode == BranchError.ERR_BRANCH_RESPONSE_TOO_LARGE) {
+                return new ServerResponse(tag, BranchError.ERR_BRANCH_RESPONSE_TOO_LARGE);
             } else { // All other errors are considered as connectivity error
                 return new ServerResponse(tag, BranchError.ERR_BRANCH_NO_CONNECTIVITY);
             }
@@ -124,6 +168,21 @@ public abstract class BranchRemoteInterface {
      * @return {@link ServerResponse} object representing the result of RESTful POST to Branch Server
      */
     public final ServerResponse make_restful_post(JSONObject body, String url, String tag, String branchKey) {
+        return make_restful_post(body, url, tag, branchKey, null);
+    }
+
+    /**
+     * Method for handling the RESTful POST operations to Branch Servers with the idempotency key of the request.
+     * Internally calls {@link #doRestfulPost(String, JSONObject, String)}
+     *
+     * @param url            The url end point
+     * @param body           {@link JSONObject with parameters to the POST call}
+     * @param tag            {@link String} Tag for identifying the request for analytical or debugging purpose
+     * @param branchKey      {@link String} Branch key
+     * @param idempotencyKey Key sent with every attempt of the request. May be null
+     * @return {@link ServerResponse} object representing the result of RESTful POST to Branch Server
+     */
+    public final ServerResponse make_restful_post(JSONObject body, String url, String tag, String branchKey, String idempotencyKey) {
         long reqStartTime = System.currentTimeMillis();
         body = body != null ? body : new JSONObject();
 
@@ -134,11 +193,15 @@ public abstract class BranchRemoteInterface {
         PrefHelper.Debug("BranchSDK", "Post value = " + body.toString());
 
         try {
-            BranchResponse response = doRestfulPost(url, body);
+            BranchResponse response = doRestfulPost(url, body, idempotencyKey);
+            BranchLatencyTracker.getInstance().onResponse(tag, System.currentTimeMillis() - reqStartTime);
             return processEntityForJSON(response.responseData, response.responseCode, tag);
         } catch (BranchRemoteException branchError) {
             if (branchError.branchErrorCode == BranchError.ERR_BRANCH_REQ_TIMED_OUT) {
+                BranchLatencyTracker.getInstance().onTimeout(tag);
                 return new ServerResponse(tag, BranchError.ERR_BRANCH_REQ_TIMED_OUT);
+            } else if (branchError.branchErrorCode == BranchError.ERR_BRANCH_RESPONSE_TOO_LARGE) {
+                return new ServerResponse(tag, BranchError.ERR_BRANCH_RESPONSE_TOO_LARGE);
             } else { // All other errors are considered as connectivity error
                 return new ServerResponse(tag, BranchError.ERR_BRANCH_NO_CONNECTIVITY);
             }
@@ -150,6 +213,81 @@ public abstract class BranchRemoteInterface {
         }
     }
 
+    /**
+     * Method for handling latency sensitive RESTful POST operations to Branch Servers. If no response arrives within
+     * the learned 95th percentile of the round trip time of the endpoint, a duplicate of the request is sent. While
+     * the first request holds its connection, the duplicate goes out on another one. The first successful response
+     * wins. Both requests carry the same idempotency key, so that the server executes the request once. Until enough
+     * round trip times of the endpoint are measured, the request is sent once.
+     *
+     * @param body           {@link JSONObject with parameters to the POST call}
+     * @param url            The url end point
+     * @param tag            {@link String} Tag for identifying the request for analytical or debugging purpose
+     * @param branchKey      {@link String} Branch key
+     * @param idempotencyKey Key sent with both requests
+     * @return {@link ServerResponse} object representing the result of RESTful POST to Branch Server
+     */
+    public final ServerResponse make_hedged_restful_post(JSONObject body, String url, String tag, String branchKey, String idempotencyKey) {
+        long hedgeDelay = BranchLatencyTracker.getInstance().getHedgeDelay(tag);
+        JSONObject primaryBody;
+        JSONObject hedgeBody;
+        try {
+            // Each request adds its own common params, so the requests can not share the body
+            primaryBody = new JSONObject(body != null ? body.toString() : "{}");
+            hedgeBody = new JSONObject(primaryBody.toString());
+        } catch (JSONException ex) {
+            hedgeDelay = 0;
+            primaryBody = body;
+            hedgeBody = null;
+        }
+        if (hedgeDelay <= 0) {
+            return make_restful_post(primaryBody, url, tag, branchKey, idempotencyKey);
+        }
+
+        BlockingQueue<ServerResponse> responses = new LinkedBlockingQueue<>();
+        AtomicBoolean isPrimaryClaimed = new AtomicBoolean(false);
+        BranchExecutor.getInstance().execute(new HedgedPost(primaryBody, url, tag, branchKey, idempotencyKey, responses, isPrimaryClaimed),
+                BranchExecutor.PRIORITY_INTERACTIVE);
+        try {
+            int pendingCount = 1;
+            ServerResponse response = responses.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+            if (response == null) {
+                if (isPrimaryClaimed.compareAndSet(false, true)) {
+                    // The executor has no thread free for the request. Send it from this thread instead
+                    return make_restful_post(primaryBody, url, tag, branchKey, idempotencyKey);
+                }
+                PrefHelper.Debug("BranchSDK", "No response to " + tag + " in " + hedgeDelay + " ms. Sending a hedged request");
+                AtomicBoolean isHedgeClaimed = new AtomicBoolean(false);
+                BranchExecutor.getInstance().execute(new HedgedPost(hedgeBody, url, tag, branchKey, idempotencyKey, responses, isHedgeClaimed),
+                        BranchExecutor.PRIORITY_INTERACTIVE);
+                pendingCount++;
+                if (Branch.getInstance() != null) {
+                    Branch.getInstance().addExtraInstrumentationData(tag + "-" + Defines.Jsonkey.Hedge_Delay.getKey(), String.valueOf(hedgeDelay));
+                }
+                response = responses.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+                if (response == null) {
+                    if (isHedgeClaimed.compareAndSet(false, true)) {
+                        // The executor has no thread free for the hedged request. Send it from this thread instead
+                        response = make_restful_post(hedgeBody, url, tag, branchKey, idempotencyKey);
+                    } else {
+                        response = responses.take();
+                    }
+                }
+            }
+            pendingCount--;
+            // A failed response waits for the other request if it is still pending. Both requests are in progress
+            // by now, so the wait ends within their timeouts
+            while (response.getStatusCode() != HttpURLConnection.HTTP_OK && pendingCount > 0) {
+                response = responses.take();
+                pendingCount--;
+            }
+            return response;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return new ServerResponse(tag, BranchError.ERR_BRANCH_REQ_TIMED_OUT);
+        }
+    }
+
     public static final BranchRemoteInterface getDefaultBranchRemoteInterface(Context context) {
         BranchRemoteInterface branchRemoteInterface = null;
 
@@ -165,6 +303,38 @@ public abstract class BranchRemoteInterface {
 
     //----------- private methods----------------------------//
 
+    /**
+     * One of the requests of {@link #make_hedged_restful_post(JSONObject, String, String, String, String)}. Skipped if the
+     * caller claimed the request for itself before it started.
+     */
+    private class HedgedPost implements Runnable {
+        private final JSONObject body_;
+        private final String url_;
+        private final String tag_;
+        private final String branchKey_;
+        private final String idempotencyKey_;
+        private final BlockingQueue<ServerResponse> responses_;
+        private final AtomicBoolean isClaimed_;
+
+        HedgedPost(JSONObject body, String url, String tag, String branchKey, String idempotencyKey,
+                   BlockingQueue<ServerResponse> responses, AtomicBoolean isClaimed) {
+            body_ = body;
+            url_ = url;
+            tag_ = tag;
+            branchKey_ = branchKey;
+            idempotencyKey_ = idempotencyKey;
+            responses_ = responses;
+            isClaimed_ = isClaimed;
+        }
+
+        @Override
+        public void run() {
+            if (isClaimed_.compareAndSet(false, true)) {
+                responses_.add(make_restful_post(body_, url_, tag_, branchKey_, idempotencyKey_));
+            }
+        }
+    }
+
     /**
      * <p>Converts resultant output object from Branch Remote server into a {@link ServerResponse} object by
      * reading the content supplied in the raw server response, and creating a {@link JSONObject}
@@ -212,38 +382,6 @@ public abstract class BranchRemoteInterface {
     }
 
 
-    private String convertJSONtoString(JSONObject json) {
-        StringBuilder result = new StringBuilder();
-        if (json != null) {
-            JSONArray names = json.names();
-            if (names != null) {
-                boolean first = true;
-                int size = names.length();
-                for (int i = 0; i < size; i++) {
-                    try {
-                        String key = names.getString(i);
-
-                        if (first) {
-                            result.append("?");
-                            first = false;
-                        } else {
-                            result.append("&");
-                        }
-
-                        String value = json.getString(key);
-                        result.append(key).append("=").append(value);
-                    } catch (JSONException e) {
-                        e.printStackTrace();
-                        return null;
-                    }
-                }
-            }
-        }
-
-        return result.toString();
-    }
-
-
     //-------------- Supporting classes -----------------------//
 
     /**
@@ -264,6 +402,15 @@ public abstract class BranchRemoteInterface {
             this.responseData = responseData;
             this.responseCode = responseCode;
         }
+
+        @Nullable
+        public String getResponseData() {
+            return responseData;
+        }
+
+        public int getResponseCode() {
+            return responseCode;
+        }
     }
 
     /**
@@ -276,11 +423,16 @@ public abstract class BranchRemoteInterface {
         /**
          * Creates BranchRemoteException
          * @param errorCode Error code for operation failure. Should be one of
-         * {@link BranchError#ERR_BRANCH_REQ_TIMED_OUT} | {@link BranchError#ERR_BRANCH_NO_CONNECTIVITY}
+         * {@link BranchError#ERR_BRANCH_REQ_TIMED_OUT} | {@link BranchError#ERR_BRANCH_NO_CONNECTIVITY} |
+         * {@link BranchError#ERR_BRANCH_RESPONSE_TOO_LARGE}
          */
         public BranchRemoteException(int errorCode) {
             branchErrorCode = errorCode;
         }
+
+        public int getBranchErrorCode() {
+            return branchErrorCode;
+        }
     }
 
 }
@@ -7,123 +7,128 @@ import android.util.Log;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.HttpURLConnection;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import javax.net.ssl.HttpsURLConnection;
 
+import io.branch.referral.Branch;
 import io.branch.referral.BranchError;
+import io.branch.referral.Defines;
 import io.branch.referral.PrefHelper;
 
 /**
  * Created by sojanpr on 5/31/17.
  * Class for implementing BranchRemoteInterface using the HttpUrlConnection.
  * This class provides implementation for Branch RESTful operations using HTTP URL Connection.
+ * Connections are kept alive and reused across requests by the connection pool of {@link HttpURLConnection}.
+ * For a connection to go back to the pool its response stream is fully read and closed, and it is never
+ * disconnected unless the request failed.
  */
 public class BranchRemoteInterfaceUrlConnection extends BranchRemoteInterface {
     private static final int DEFAULT_TIMEOUT = 3000;
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    // Largest request body buffer kept for reuse. Buffers grown beyond this are released after use
+    private static final int MAX_REUSED_BUFFER_SIZE = 64 * 1024;
+    private static final String GZIP = "gzip";
+    private static final String CHARSET_PARAM = "charset=";
+    private static final String DEFAULT_CHARSET = "UTF-8";
+
+    // Buffers for encoding request bodies, reused by the requests of each thread
+    private static final ThreadLocal<BodyBuffer> rawBodyBuffer_ = new ThreadLocal<>();
+    private static final ThreadLocal<BodyBuffer> compressedBodyBuffer_ = new ThreadLocal<>();
+    private static final ThreadLocal<BodyBuffer> responseBodyBuffer_ = new ThreadLocal<>();
     PrefHelper prefHelper;
 
     BranchRemoteInterfaceUrlConnection(Context context) {
         prefHelper = PrefHelper.getInstance(context);
     }
 
+    ///-------------- RESTful GET / POST using HttpURLConnection ---------------//
+    // Each call makes a single attempt. Failed requests are retried by the request queue after a backoff, so that
+    // no thread waits between attempts. The retry number is reported with the request by the caller.
     @Override
     public BranchResponse doRestfulGet(String url) throws BranchRemoteException {
-        return doRestfulGet(url, 0);
-    }
-
-    @Override
-    public BranchResponse doRestfulPost(String url, JSONObject payload) throws BranchRemoteException {
-        return doRestfulPost(url, payload, 0);
-    }
-
-    ///-------------- private methods to implement RESTful GET / POST using HttpURLConnection ---------------//
-    private BranchResponse doRestfulGet(String url, int retryNumber) throws BranchRemoteException {
-        HttpsURLConnection connection = null;
+        HttpURLConnection connection = null;
+        boolean isReusable = false;
         try {
-            int timeout = prefHelper.getTimeout();
-            if (timeout <= 0) {
-                timeout = DEFAULT_TIMEOUT;
+            String modifiedUrl = url;
+            if (!url.contains(RETRY_NUMBER + "=")) {
+                String appendKey = url.contains("?") ? "&" : "?";
+                modifiedUrl = url + appendKey + RETRY_NUMBER + "=0";
             }
-            String appendKey = url.contains("?") ? "&" : "?";
-            String modifiedUrl = url + appendKey + RETRY_NUMBER + "=" + retryNumber;
             URL urlObject = new URL(modifiedUrl);
-            connection = (HttpsURLConnection) urlObject.openConnection();
+            int timeout = getTimeout(urlObject);
+            connection = (HttpURLConnection) urlObject.openConnection();
             connection.setConnectTimeout(timeout);
             connection.setReadTimeout(timeout);
+            connection.setRequestProperty("Accept-Encoding", GZIP);
 
             int responseCode = connection.getResponseCode();
-            if (responseCode >= 500 &&
-                    retryNumber < prefHelper.getRetryCount()) {
-                try {
-                    Thread.sleep(prefHelper.getRetryInterval());
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-                retryNumber++;
-                return doRestfulGet(url, retryNumber);
-            } else {
-                try {
-                    if (responseCode != HttpsURLConnection.HTTP_OK && connection.getErrorStream() != null) {
-                        return new BranchResponse(getResponseString(connection.getErrorStream()), responseCode);
-                    } else {
-                        return new BranchResponse(getResponseString(connection.getInputStream()), responseCode);
-                    }
-                } catch (FileNotFoundException ex) {
-                    // In case of Resource conflict getInputStream will throw FileNotFoundException. Handle it here in order to send the right status code
-                    PrefHelper.Debug("BranchSDK", "A resource conflict occurred with this request " + url);
-                    return new BranchResponse(null, responseCode);
+            try {
+                BranchResponse response;
+                if (responseCode != HttpsURLConnection.HTTP_OK && connection.getErrorStream() != null) {
+                    response = new BranchResponse(getResponseString(connection, connection.getErrorStream()), responseCode);
+                } else {
+                    response = new BranchResponse(getResponseString(connection, connection.getInputStream()), responseCode);
                 }
+                isReusable = true;
+                return response;
+            } catch (FileNotFoundException ex) {
+                // In case of Resource conflict getInputStream will throw FileNotFoundException. Handle it here in order to send the right status code
+                PrefHelper.Debug("BranchSDK", "A resource conflict occurred with this request " + url);
+                return new BranchResponse(null, responseCode);
             }
         } catch (SocketException ex) {
             PrefHelper.Debug(getClass().getSimpleName(), "Http connect exception: " + ex.getMessage());
             throw new BranchRemoteException(BranchError.ERR_BRANCH_NO_CONNECTIVITY);
 
         } catch (SocketTimeoutException ex) {
-            // On socket  time out retry the request for retryNumber of times
-            if (retryNumber < prefHelper.getRetryCount()) {
-                try {
-                    Thread.sleep(prefHelper.getRetryInterval());
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-                retryNumber++;
-                return doRestfulGet(url, retryNumber);
-            } else {
-                throw new BranchRemoteException(BranchError.ERR_BRANCH_REQ_TIMED_OUT);
-            }
+            throw new BranchRemoteException(BranchError.ERR_BRANCH_REQ_TIMED_OUT);
         } catch (IOException ex) {
             PrefHelper.Debug(getClass().getSimpleName(), "Branch connect exception: " + ex.getMessage());
             throw new BranchRemoteException(BranchError.ERR_BRANCH_NO_CONNECTIVITY);
         } finally {
-            if (connection != null) {
+            // Disconnecting closes the socket. Only do so when the connection can not go back to the pool
+            if (connection != null && !isReusable) {
                 connection.disconnect();
             }
         }
     }
 
 
-    private BranchResponse doRestfulPost(String url, JSONObject payload, int retryNumber) throws BranchRemoteException {
+    @Override
+    public BranchResponse doRestfulPost(String url, JSONObject payload) throws BranchRemoteException {
+        return doRestfulPost(url, payload, null);
+    }
+
+    @Override
+    public BranchResponse doRestfulPost(String url, JSONObject payload, String idempotencyKey) throws BranchRemoteException {
         HttpURLConnection connection = null;
-        int timeout = prefHelper.getTimeout();
-        if (timeout <= 0) {
-            timeout = DEFAULT_TIMEOUT;
-        }
+        boolean isReusable = false;
         try {
-            payload.put(RETRY_NUMBER, retryNumber);
+            if (!payload.has(RETRY_NUMBER)) {
+                payload.put(RETRY_NUMBER, 0);
+            }
         } catch (JSONException ignore) {
         }
         try {
             URL urlObject = new URL(url);
+            int timeout = getTimeout(urlObject);
             connection = (HttpURLConnection) urlObject.openConnection();
             connection.setConnectTimeout(timeout);
             connection.setReadTimeout(timeout);
@@ -131,54 +136,49 @@ public class BranchRemoteInterfaceUrlConnection extends BranchRemoteInterface {
             connection.setDoOutput(true);
             connection.setRequestProperty("Content-Type", "application/json");
             connection.setRequestProperty("Accept", "application/json");
+            connection.setRequestProperty("Accept-Encoding", GZIP);
+            if (idempotencyKey != null) {
+                connection.setRequestProperty(IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+            }
             connection.setRequestMethod("POST");
 
-            OutputStreamWriter outputStreamWriter = new OutputStreamWriter(connection.getOutputStream());
-
-            outputStreamWriter.write(payload.toString());
-            outputStreamWriter.flush();
+            BodyBuffer body = encodeBody(payload, urlObject.getPath());
+            if (body == compressedBodyBuffer_.get()) {
+                connection.setRequestProperty("Content-Encoding", GZIP);
+            }
+            // Sending the known length avoids chunked encoding and buffering of the body by the connection
+            connection.setFixedLengthStreamingMode(body.size());
+            OutputStream outputStream = connection.getOutputStream();
+            try {
+                body.writeTo(outputStream);
+            } finally {
+                outputStream.close();
+                releaseBodyBuffers();
+            }
 
             int responseCode = connection.getResponseCode();
-            if (responseCode >= HttpsURLConnection.HTTP_INTERNAL_ERROR
-                    && retryNumber < prefHelper.getRetryCount()) {
-                try {
-                    Thread.sleep(prefHelper.getRetryInterval());
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-                retryNumber++;
-                return doRestfulPost(url, payload, retryNumber);
-            } else {
-                try {
-                    if (responseCode != HttpsURLConnection.HTTP_OK && connection.getErrorStream() != null) {
-                        return new BranchResponse(getResponseString(connection.getErrorStream()), responseCode);
-                    } else {
-                        return new BranchResponse(getResponseString(connection.getInputStream()), responseCode);
-                    }
-                } catch (FileNotFoundException ex) {
-                    // In case of Resource conflict getInputStream will throw FileNotFoundException. Handle it here in order to send the right status code
-                    PrefHelper.Debug("BranchSDK", "A resource conflict occurred with this request " + url);
-                    return new BranchResponse(null, responseCode);
+            try {
+                BranchResponse response;
+                if (responseCode != HttpsURLConnection.HTTP_OK && connection.getErrorStream() != null) {
+                    response = new BranchResponse(getResponseString(connection, connection.getErrorStream()), responseCode);
+                } else {
+                    response = new BranchResponse(getResponseString(connection, connection.getInputStream()), responseCode);
                 }
+                isReusable = true;
+                return response;
+            } catch (FileNotFoundException ex) {
+                // In case of Resource conflict getInputStream will throw FileNotFoundException. Handle it here in order to send the right status code
+                PrefHelper.Debug("BranchSDK", "A resource conflict occurred with this request " + url);
+                return new BranchResponse(null, responseCode);
             }
 
-
         } catch (SocketTimeoutException ex) {
-            // On socket  time out retry the request for retryNumber of times
-            if (retryNumber < prefHelper.getRetryCount()) {
-                try {
-                    Thread.sleep(prefHelper.getRetryInterval());
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-                retryNumber++;
-                return doRestfulPost(url, payload, retryNumber);
-            } else {
-                throw new BranchRemoteException(BranchError.ERR_BRANCH_REQ_TIMED_OUT);
-            }
+            throw new BranchRemoteException(BranchError.ERR_BRANCH_REQ_TIMED_OUT);
         } catch (IOException ex) {
             PrefHelper.Debug(getClass().getSimpleName(), "Http connect exception: " + ex.getMessage());
             throw new BranchRemoteException(BranchError.ERR_BRANCH_NO_CONNECTIVITY);
+        } catch (BranchRemoteException ex) {
+            throw ex;
         } catch (Exception ex) {
             PrefHelper.Debug(getClass().getSimpleName(), "Exception: " + ex.getMessage());
             if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.HONEYCOMB) {
@@ -187,23 +187,241 @@ public class BranchRemoteInterfaceUrlConnection extends BranchRemoteInterface {
             }
             return new BranchResponse(null, 500);
         } finally {
-            if (connection != null) {
+            // Disconnecting closes the socket. Only do so when the connection can not go back to the pool
+            if (connection != null && !isReusable) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Establishes a connection with a HEAD request and returns it to the connection pool, where the first request to
+     * the Branch API picks it up. The time taken to connect, which the first request saves, is added to the
+     * instrumentation data.
+     *
+     * @param url The base url of the Branch API
+     */
+    @Override
+    public void prewarmConnection(String url) {
+        HttpURLConnection connection = null;
+        boolean isReusable = false;
+        try {
+            URL urlObject = new URL(url);
+            int timeout = getTimeout(urlObject);
+            connection = (HttpURLConnection) urlObject.openConnection();
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
+            connection.setRequestMethod("HEAD");
+
+            long startTime = System.currentTimeMillis();
+            connection.connect();
+            long connectTime = System.currentTimeMillis() - startTime;
+            // The connection only goes back to the pool after a complete exchange
+            int responseCode = connection.getResponseCode();
+            InputStream inputStream = responseCode < HttpURLConnection.HTTP_BAD_REQUEST ? connection.getInputStream() : connection.getErrorStream();
+            if (inputStream != null) {
+                inputStream.close();
+            }
+            isReusable = true;
+
+            PrefHelper.Debug("BranchSDK", "Pre-warmed connection to " + urlObject.getHost() + " in " + connectTime + " ms");
+            Branch branch = Branch.getInstance();
+            if (branch != null) {
+                branch.addExtraInstrumentationData(Defines.Jsonkey.Connection_Prewarm_Time.getKey(), String.valueOf(connectTime));
+            }
+        } catch (IOException ex) {
+            PrefHelper.Debug(getClass().getSimpleName(), "Unable to pre-warm the connection: " + ex.getMessage());
+        } finally {
+            if (connection != null && !isReusable) {
                 connection.disconnect();
             }
         }
     }
 
+    /**
+     * Gets the connect and read timeout of a request, adapted to the measured round trip times of its endpoint
+     * and bounded by the minimum and maximum timeouts set for the SDK.
+     *
+     * @param urlObject URL of the request
+     * @return Timeout in milliseconds
+     */
+    private int getTimeout(URL urlObject) {
+        int maxTimeout = prefHelper.getTimeout();
+        if (maxTimeout <= 0) {
+            maxTimeout = DEFAULT_TIMEOUT;
+        }
+        int minTimeout = Math.min(prefHelper.getMinTimeout(), maxTimeout);
+        return BranchLatencyTracker.getInstance().getTimeout(urlObject.getPath(), minTimeout, maxTimeout);
+    }
+
+    /**
+     * Encodes the payload as UTF-8 into a reusable buffer, and gzip compresses it if it reaches the compression
+     * threshold. Records the body size before and after compression in the instrumentation data.
+     *
+     * @param payload     JSON payload of the request
+     * @param requestPath Path of the request, used for the instrumentation keys
+     * @return {@link BodyBuffer} with the body to send. Either the raw or the compressed buffer of this thread
+     * @throws IOException if the payload could not be encoded
+     */
+    private BodyBuffer encodeBody(JSONObject payload, String requestPath) throws IOException {
+        BodyBuffer rawBody = getBodyBuffer(rawBodyBuffer_);
+        Writer writer = new OutputStreamWriter(rawBody, DEFAULT_CHARSET);
+        writer.write(payload.toString());
+        writer.flush();
+        BodyBuffer body = rawBody;
+
+        int compressionThreshold = prefHelper.getRequestCompressionThreshold();
+        if (compressionThreshold > 0 && rawBody.size() >= compressionThreshold) {
+            BodyBuffer compressedBody = getBodyBuffer(compressedBodyBuffer_);
+            GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressedBody);
+            rawBody.writeTo(gzipOutputStream);
+            // Closing releases the native deflater. Closing the underlying buffer has no effect
+            gzipOutputStream.close();
+            body = compressedBody;
+        }
+
+        Branch branch = Branch.getInstance();
+        if (branch != null && requestPath != null) {
+            String tag = requestPath.startsWith("/") ? requestPath.substring(1) : requestPath;
+            branch.addExtraInstrumentationData(tag + "-" + Defines.Jsonkey.Request_Body_Size.getKey(), String.valueOf(rawBody.size()));
+            if (body != rawBody) {
+                branch.addExtraInstrumentationData(tag + "-" + Defines.Jsonkey.Compressed_Body_Size.getKey(), String.valueOf(body.size()));
+            }
+        }
+        return body;
+    }
+
+    private static BodyBuffer getBodyBuffer(ThreadLocal<BodyBuffer> bufferHolder) {
+        BodyBuffer buffer = bufferHolder.get();
+        if (buffer == null) {
+            buffer = new BodyBuffer();
+            bufferHolder.set(buffer);
+        }
+        buffer.reset();
+        return buffer;
+    }
+
+    /**
+     * Releases the request and response buffers of this thread which grew too large to be kept for reuse.
+     */
+    private static void releaseBodyBuffers() {
+        releaseIfOversized(rawBodyBuffer_);
+        releaseIfOversized(compressedBodyBuffer_);
+        releaseIfOversized(responseBodyBuffer_);
+    }
+
+    private static void releaseIfOversized(ThreadLocal<BodyBuffer> bufferHolder) {
+        BodyBuffer buffer = bufferHolder.get();
+        if (buffer != null && buffer.getCapacity() > MAX_REUSED_BUFFER_SIZE) {
+            bufferHolder.remove();
+        }
+    }
 
-    private String getResponseString(InputStream inputStream) {
+    /**
+     * Reads the response into the reusable response buffer of this thread and closes the stream. The stream is read
+     * to the end so that the connection can be reused. A gzip encoded response is decompressed, and the body is
+     * decoded with the charset of the response, or UTF-8 if none is given.
+     *
+     * @param connection  Connection the response belongs to
+     * @param inputStream Response stream
+     * @return The response body. Null if the response is empty or could not be read
+     * @throws BranchRemoteException with {@link BranchError#ERR_BRANCH_RESPONSE_TOO_LARGE} if the response exceeds the
+     *                               maximum response size
+     */
+    private String getResponseString(HttpURLConnection connection, InputStream inputStream) throws BranchRemoteException {
         String responseString = null;
         if (inputStream != null) {
-            BufferedReader rd = new BufferedReader(new InputStreamReader(inputStream));
+            BodyBuffer responseBody = getBodyBuffer(responseBodyBuffer_);
             try {
-                responseString = rd.readLine();
-            } catch (IOException ignore) {
+                if (GZIP.equalsIgnoreCase(connection.getContentEncoding())) {
+                    inputStream = new GZIPInputStream(inputStream);
+                }
+                int maxResponseSize = prefHelper.getMaxResponseSize();
+                if (responseBody.readFrom(inputStream, maxResponseSize)) {
+                    if (responseBody.size() > 0) {
+                        responseString = responseBody.toString(getCharset(connection.getContentType()));
+                    }
+                } else {
+                    // Closing the stream before its end discards the connection instead of reading the rest
+                    PrefHelper.Debug("BranchSDK", "Branch response exceeds the maximum response size of " + maxResponseSize + " bytes");
+                    throw new BranchRemoteException(BranchError.ERR_BRANCH_RESPONSE_TOO_LARGE);
+                }
+            } catch (IOException ex) {
+                PrefHelper.Debug(getClass().getSimpleName(), "Unable to read the response: " + ex.getMessage());
+            } finally {
+                try {
+                    inputStream.close();
+                } catch (IOException ignore) {
+                }
+                releaseBodyBuffers();
             }
         }
         return responseString;
     }
 
+    /**
+     * Gets the charset from a content type header, such as application/json; charset=utf-8.
+     *
+     * @param contentType Value of the content type header. May be null
+     * @return Name of the charset of the content. UTF-8 if the content type specifies no supported charset
+     */
+    private static String getCharset(String contentType) {
+        if (contentType != null) {
+            for (String param : contentType.split(";")) {
+                param = param.trim();
+                if (param.regionMatches(true, 0, CHARSET_PARAM, 0, CHARSET_PARAM.length())) {
+                    String charset = param.substring(CHARSET_PARAM.length()).replace("\"", "").trim();
+                    try {
+                        if (Charset.isSupported(charset)) {
+                            return charset;
+                        }
+                    } catch (IllegalCharsetNameException ignore) {
+                    }
+                }
+            }
+        }
+        return DEFAULT_CHARSET;
+    }
+
+    /**
+     * {@link ByteArrayOutputStream} exposing its capacity, so that oversized buffers are not kept for reuse, and
+     * reading streams straight into its storage.
+     */
+    private static class BodyBuffer extends ByteArrayOutputStream {
+        BodyBuffer() {
+            super(INITIAL_BUFFER_SIZE);
+        }
+
+        int getCapacity() {
+            return buf.length;
+        }
+
+        /**
+         * Appends the stream to the buffer up to its end.
+         *
+         * @param inputStream Stream to read
+         * @param maxSize     Maximum number of bytes to hold
+         * @return True if the stream ended within the maximum size. False if reading stopped at the maximum size
+         * @throws IOException if the stream could not be read
+         */
+        boolean readFrom(InputStream inputStream, int maxSize) throws IOException {
+            while (true) {
+                int limit = Math.min(buf.length, maxSize);
+                if (count >= limit) {
+                    if (count >= maxSize) {
+                        // The body fits only if the stream ends here
+                        return inputStream.read() == -1;
+                    }
+                    buf = Arrays.copyOf(buf, Math.min(buf.length * 2, maxSize));
+                    continue;
+                }
+                int read = inputStream.read(buf, count, limit - count);
+                if (read == -1) {
+                    return true;
+                }
+                count += read;
+            }
+        }
+    }
+
 }
@@ -0,0 +1,125 @@
+package io.branch.referral.network;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.branch.referral.BranchError;
+import io.branch.referral.Defines;
+
+/**
+ * <p>
+ * {@link BranchRemoteInterface} serving the requests recorded by {@link BranchRecordingRemoteInterface}, without
+ * the network. Requests are answered with the recordings of the same method and endpoint, in recorded order and
+ * starting over once all were served, so that a replay is deterministic. Each response is delayed by its recorded
+ * latency multiplied by a time scale. A time scale of zero serves responses right away, to benchmark the request
+ * queue, response parsing and persistence on their own.
+ * </p>
+ */
+public class BranchReplayRemoteInterface extends BranchRemoteInterface {
+    private final Map<String, List<JSONObject>> recordings_ = new HashMap<>();
+    private final Map<String, Integer> positions_ = new HashMap<>();
+    private final float timeScale_;
+
+    /**
+     * @param file      File written by {@link BranchRecordingRemoteInterface}
+     * @param timeScale Factor applied to the recorded latencies. 1 for the recorded timing, 0 for no delay
+     * @throws IOException if the file can not be read
+     */
+    public BranchReplayRemoteInterface(File file, float timeScale) throws IOException {
+        this(new FileInputStream(file), timeScale);
+    }
+
+    /**
+     * @param recording Stream of a recording written by {@link BranchRecordingRemoteInterface}. Closed once read
+     * @param timeScale Factor applied to the recorded latencies. 1 for the recorded timing, 0 for no delay
+     * @throws IOException if the recording can not be read
+     */
+    public BranchReplayRemoteInterface(InputStream recording, float timeScale) throws IOException {
+        timeScale_ = Math.max(0, timeScale);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(recording, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    JSONObject entry = new JSONObject(line);
+                    String key = getKey(entry.getString(BranchRecordingRemoteInterface.KEY_METHOD),
+                            entry.getString(BranchRecordingRemoteInterface.KEY_PATH));
+                    List<JSONObject> entries = recordings_.get(key);
+                    if (entries == null) {
+                        entries = new ArrayList<>();
+                        recordings_.put(key, entries);
+                    }
+                    entries.add(entry);
+                } catch (JSONException ex) {
+                    throw new IOException("Invalid recording: " + line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Override
+    public BranchResponse doRestfulGet(String url) throws BranchRemoteException {
+        return replay(BranchRecordingRemoteInterface.METHOD_GET, url);
+    }
+
+    @Override
+    public BranchResponse doRestfulPost(String url, JSONObject payload) throws BranchRemoteException {
+        return replay(BranchRecordingRemoteInterface.METHOD_POST, url);
+    }
+
+    private BranchResponse replay(String method, String url) throws BranchRemoteException {
+        JSONObject entry = next(getKey(method, BranchRecordingRemoteInterface.getPath(url)));
+        if (entry == null) {
+            throw new BranchRemoteException(BranchError.ERR_BRANCH_NO_CONNECTIVITY);
+        }
+        long delay = (long) (entry.optLong(BranchRecordingRemoteInterface.KEY_LATENCY) * timeScale_);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (entry.has(BranchRecordingRemoteInterface.KEY_ERROR_CODE)) {
+            throw new BranchRemoteException(entry.optInt(BranchRecordingRemoteInterface.KEY_ERROR_CODE));
+        }
+        String response = entry.isNull(BranchRecordingRemoteInterface.KEY_RESPONSE) ? null : entry.optString(BranchRecordingRemoteInterface.KEY_RESPONSE);
+        return new BranchResponse(response, entry.optInt(BranchRecordingRemoteInterface.KEY_STATUS_CODE));
+    }
+
+    private synchronized JSONObject next(String key) {
+        List<JSONObject> entries = recordings_.get(key);
+        if (entries == null || entries.isEmpty()) {
+            return null;
+        }
+        Integer position = positions_.get(key);
+        int index = position == null ? 0 : position;
+        positions_.put(key, (index + 1) % entries.size());
+        return entries.get(index);
+    }
+
+    /**
+     * Keys recordings by method and endpoint, so that paths with parameters such as v1/credits/{identity} match
+     * whatever their parameters were when recorded.
+     */
+    private static String getKey(String method, String path) {
+        Defines.RequestPath endpoint = BranchLatencyTracker.getEndpoint(path);
+        return method + " " + (endpoint != null ? endpoint.getPath() : path);
+    }
+}
@@ -0,0 +1,128 @@
+package io.branch.referral.network;
+
+import org.json.JSONObject;
+
+import java.util.Iterator;
+
+import io.branch.referral.BuildConfig;
+import io.branch.referral.Defines;
+
+/**
+ * <p>
+ * Builds the urls of GET requests to the Branch API in a single pass. Parameters are percent encoded as UTF-8,
+ * following RFC 3986, straight into a buffer sized up front. The common parameters, which are the same for every
+ * request of a Branch key, are encoded once and appended as a suffix.
+ * </p>
+ */
+public final class BranchUrlEncoder {
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final String SDK_KEY = "sdk";
+    // Estimated length of an encoded parameter, used to size the buffer of the url
+    private static final int ESTIMATED_PARAM_LENGTH = 32;
+
+    // Common params for the Branch key they were encoded for. Guarded by the class
+    private static String commonParamsBranchKey_;
+    private static String commonParams_;
+
+    private BranchUrlEncoder() {
+    }
+
+    /**
+     * Percent encodes a value for use in a query or a path segment.
+     *
+     * @param value The value to encode
+     * @return The encoded value
+     */
+    public static String encode(String value) {
+        StringBuilder result = new StringBuilder(value.length() + 16);
+        appendEncoded(result, value);
+        return result.toString();
+    }
+
+    /**
+     * Builds the url of a GET request with its parameters, the retry number and the common parameters.
+     *
+     * @param url       The url end point
+     * @param params    {@link JSONObject} with the parameters of the request. May be null
+     * @param branchKey Branch key sent with the common parameters
+     * @return The url of the request
+     */
+    static String buildGetUrl(String url, JSONObject params, String branchKey) {
+        String commonParams = getCommonParams(branchKey);
+        int paramCount = params != null ? params.length() : 0;
+        StringBuilder result = new StringBuilder(url.length() + commonParams.length() + (paramCount + 1) * ESTIMATED_PARAM_LENGTH);
+        result.append(url).append(url.indexOf('?') < 0 ? '?' : '&');
+        boolean hasRetryNumber = false;
+        if (params != null) {
+            Iterator<?> keys = params.keys();
+            while (keys.hasNext()) {
+                String key = (String) keys.next();
+                // Sent with the common params
+                if (SDK_KEY.equals(key) || Defines.Jsonkey.BranchKey.getKey().equals(key)) {
+                    continue;
+                }
+                appendEncoded(result, key);
+                result.append('=');
+                appendEncoded(result, String.valueOf(params.opt(key)));
+                result.append('&');
+                hasRetryNumber |= BranchRemoteInterface.RETRY_NUMBER.equals(key);
+            }
+        }
+        if (!hasRetryNumber) {
+            result.append(BranchRemoteInterface.RETRY_NUMBER).append("=0&");
+        }
+        result.append(commonParams);
+        return result.toString();
+    }
+
+    private static synchronized String getCommonParams(String branchKey) {
+        if (!branchKey.equals(commonParamsBranchKey_)) {
+            StringBuilder commonParams = new StringBuilder(ESTIMATED_PARAM_LENGTH * 3);
+            commonParams.append(SDK_KEY).append('=');
+            appendEncoded(commonParams, "android" + BuildConfig.VERSION_NAME);
+            commonParams.append('&').append(Defines.Jsonkey.BranchKey.getKey()).append('=');
+            appendEncoded(commonParams, branchKey);
+            commonParams_ = commonParams.toString();
+            commonParamsBranchKey_ = branchKey;
+        }
+        return commonParams_;
+    }
+
+    private static void appendEncoded(StringBuilder out, String value) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '.' || c == '_' || c == '~') {
+                out.append(c);
+                continue;
+            }
+            int codePoint = c;
+            if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, value.charAt(++i));
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                // Unpaired surrogate. Encode the replacement character, as String.getBytes() would
+                codePoint = 0xFFFD;
+            }
+            if (codePoint < 0x80) {
+                appendByte(out, codePoint);
+            } else if (codePoint < 0x800) {
+                appendByte(out, 0xC0 | (codePoint >> 6));
+                appendByte(out, 0x80 | (codePoint & 0x3F));
+            } else if (codePoint < 0x10000) {
+                appendByte(out, 0xE0 | (codePoint >> 12));
+                appendByte(out, 0x80 | ((codePoint >> 6) & 0x3F));
+                appendByte(out, 0x80 | (codePoint & 0x3F));
+            } else {
+                appendByte(out, 0xF0 | (codePoint >> 18));
+                appendByte(out, 0x80 | ((codePoint >> 12) & 0x3F));
+                appendByte(out, 0x80 | ((codePoint >> 6) & 0x3F));
+                appendByte(out, 0x80 | (codePoint & 0x3F));
+            }
+        }
+    }
+
+    private static void appendByte(StringBuilder out, int b) {
+        out.append('%').append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+    }
+}